@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import java.text.SimpleDateFormat;
+
+/*
+    Checks the day strings Utility's date methods give through the cached formatting, for days
+    in and outside the cached window.
+ */
+public class TestDayFormatter extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    public void testFriendlyDayStrings() {
+        long now = System.currentTimeMillis();
+        String today = mContext.getString(R.string.today);
+        String monthDay = new SimpleDateFormat("MMMM dd").format(now);
+
+        assertEquals(today, Utility.getFriendlyDayString(mContext, now, false));
+        assertEquals(mContext.getString(R.string.format_full_friendly_date, today, monthDay),
+                Utility.getFriendlyDayString(mContext, now, true));
+        assertEquals(monthDay, Utility.getFormattedMonthDay(mContext, now));
+        assertEquals(mContext.getString(R.string.tomorrow),
+                Utility.getDayName(mContext, now + DAY_IN_MILLIS));
+
+        // Within the week just the day's name, after that the short date.
+        long inThreeDays = now + 3 * DAY_IN_MILLIS;
+        String dayName = new SimpleDateFormat("EEEE").format(inThreeDays);
+        assertEquals(dayName, Utility.getDayName(mContext, inThreeDays));
+        assertEquals(dayName, Utility.getFriendlyDayString(mContext, inThreeDays, true));
+        long inTenDays = now + 10 * DAY_IN_MILLIS;
+        assertEquals(new SimpleDateFormat("EEE MMM dd").format(inTenDays),
+                Utility.getFriendlyDayString(mContext, inTenDays, false));
+    }
+
+    public void testOutsideWindow() {
+        // Days the cache doesn't hold are still formatted.
+        long now = System.currentTimeMillis();
+        long yesterday = now - DAY_IN_MILLIS;
+        long later = now + (DayFormatter.WINDOW_DAYS + 5) * DAY_IN_MILLIS;
+        assertEquals(new SimpleDateFormat("EEEE").format(yesterday),
+                Utility.getDayName(mContext, yesterday));
+        assertEquals(new SimpleDateFormat("EEE MMM dd").format(later),
+                Utility.getFriendlyDayString(mContext, later, false));
+        assertEquals(new SimpleDateFormat("MMMM dd").format(later),
+                Utility.getFormattedMonthDay(mContext, later));
+    }
+
+    public void testTodayJulianDay() {
+        Time time = new Time();
+        time.setToNow();
+        DayFormatter formatter = DayFormatter.getInstance(mContext);
+        assertEquals(Time.getJulianDay(System.currentTimeMillis(), time.gmtoff),
+                formatter.getTodayJulianDay());
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Checks that the ranges a ForecastDiff notifies turn the old rows into the new ones, and
+    that rows which didn't change aren't touched.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // Columns in the order of ForecastFragment's COL_ indices.
+    private static final String[] COLUMNS = {
+            "_id", "date", "short_desc", "max", "min", "location_setting", "weather_id",
+            "coord_lat", "coord_long"
+    };
+
+    private final long mToday = System.currentTimeMillis();
+
+    // Rows for the days from the first to the last, with the given high on the changed day.
+    private ForecastRow[] createRows(int firstDay, int lastDay, int changedDay, double high) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int i = firstDay; i <= lastDay; i++) {
+            cursor.addRow(new Object[]{i + 1, mToday + i * DAY_IN_MILLIS, "Clear",
+                    i == changedDay ? high : 20.0, 10.0, "94043", 800, 37.386051, -122.083847});
+        }
+        ForecastRow[] rows = ForecastRow.buildAll(mContext, cursor);
+        cursor.close();
+        return rows;
+    }
+
+    public void testSameRows() {
+        ForecastRow[] oldRows = createRows(0, 13, -1, 0);
+        ForecastRow[] newRows = createRows(0, 13, -1, 0);
+        ForecastDiff diff = ForecastDiff.compute(oldRows, newRows);
+
+        assertNotNull(diff);
+        assertEquals(0, diff.getInsertedCount());
+        assertEquals(0, diff.getRemovedCount());
+        assertEquals(0, diff.getChangedCount());
+        checkDispatch(diff, oldRows, newRows);
+    }
+
+    public void testChangedDay() {
+        ForecastRow[] oldRows = createRows(0, 13, -1, 0);
+        ForecastRow[] newRows = createRows(0, 13, 5, 30.0);
+        ForecastDiff diff = ForecastDiff.compute(oldRows, newRows);
+
+        assertEquals(0, diff.getInsertedCount());
+        assertEquals(0, diff.getRemovedCount());
+        assertEquals(1, diff.getChangedCount());
+        checkDispatch(diff, oldRows, newRows);
+    }
+
+    public void testDaysMoved() {
+        // Yesterday dropped off the top, a new day came at the end.
+        ForecastRow[] oldRows = createRows(-1, 12, -1, 0);
+        ForecastRow[] newRows = createRows(0, 13, -1, 0);
+        ForecastDiff diff = ForecastDiff.compute(oldRows, newRows);
+
+        assertEquals(1, diff.getInsertedCount());
+        assertEquals(1, diff.getRemovedCount());
+        // The new first row changes layout.
+        assertEquals(1, diff.getChangedCount());
+        checkDispatch(diff, oldRows, newRows);
+    }
+
+    public void testFromAndToEmpty() {
+        ForecastRow[] noRows = new ForecastRow[0];
+        ForecastRow[] rows = createRows(0, 13, -1, 0);
+
+        ForecastDiff diff = ForecastDiff.compute(noRows, rows);
+        assertEquals(14, diff.getInsertedCount());
+        checkDispatch(diff, noRows, rows);
+
+        diff = ForecastDiff.compute(rows, noRows);
+        assertEquals(14, diff.getRemovedCount());
+        checkDispatch(diff, rows, noRows);
+    }
+
+    public void testUnsortedRows() {
+        ForecastRow[] rows = createRows(0, 3, -1, 0);
+        ForecastRow[] unsorted = {rows[1], rows[0], rows[2], rows[3]};
+
+        assertNull(ForecastDiff.compute(rows, unsorted));
+        assertNull(ForecastDiff.compute(unsorted, rows));
+        assertNull(ForecastDiff.compute(null, rows));
+        assertTrue(ForecastDiff.compute(rows, rows).startsFrom(rows));
+    }
+
+    /*
+        Applies the notified ranges to the old rows, and checks the result lines up with the
+        new rows, with every row that wasn't inserted or changed showing the same as before.
+     */
+    private void checkDispatch(ForecastDiff diff, ForecastRow[] oldRows, ForecastRow[] newRows) {
+        final List<ForecastRow> shown = new ArrayList<ForecastRow>();
+        for (ForecastRow row : oldRows) {
+            shown.add(row);
+        }
+        RecyclerView.Adapter adapter = new RecyclerView.Adapter() {
+            @Override
+            public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+                return null;
+            }
+
+            @Override
+            public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            }
+
+            @Override
+            public int getItemCount() {
+                return shown.size();
+            }
+        };
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                for (int i = 0; i < itemCount; i++) {
+                    shown.add(positionStart, null);
+                }
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                for (int i = 0; i < itemCount; i++) {
+                    shown.remove(positionStart);
+                }
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                for (int i = positionStart; i < positionStart + itemCount; i++) {
+                    shown.set(i, null);
+                }
+            }
+        });
+
+        diff.dispatchTo(adapter);
+
+        assertEquals(newRows.length, shown.size());
+        for (int i = 0; i < newRows.length; i++) {
+            ForecastRow row = shown.get(i);
+            if (row != null) {
+                assertTrue("Row " + i + " wasn't rebound", row.hasSameContent(newRows[i]));
+            }
+        }
+    }
+}
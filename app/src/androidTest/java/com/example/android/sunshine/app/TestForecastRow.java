@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+
+/*
+    Checks that the rows ForecastLoader formats show what binding straight from the cursor
+    used to.
+ */
+public class TestForecastRow extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // Columns in the order of ForecastFragment's COL_ indices.
+    private static final String[] COLUMNS = {
+            "_id", "date", "short_desc", "max", "min", "location_setting", "weather_id",
+            "coord_lat", "coord_long"
+    };
+
+    private static Cursor createForecastCursor(int numDays) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        long today = System.currentTimeMillis();
+        for (int i = 0; i < numDays; i++) {
+            cursor.addRow(new Object[]{i + 1, today + i * DAY_IN_MILLIS, "Clear",
+                    18.5 + i % 5, 5.25 + i % 7, "94043", 800 + i % 5, 37.386051, -122.083847});
+        }
+        return cursor;
+    }
+
+    public void testRowsMatchCursor() {
+        Cursor cursor = createForecastCursor(14);
+        ForecastRow[] rows = ForecastRow.buildAll(mContext, cursor);
+        assertEquals(14, rows.length);
+
+        for (int i = 0; i < rows.length; i++) {
+            cursor.moveToPosition(i);
+            ForecastRow row = rows[i];
+            long date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+            String high = Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+            String low = Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+
+            assertEquals(date, row.mDate);
+            assertEquals(weatherId, row.mWeatherId);
+            assertEquals(Utility.getFriendlyDayString(mContext, date, false), row.mDateText);
+            assertEquals(Utility.getFriendlyDayString(mContext, date, true), row.mLongDateText);
+            assertEquals(description, row.mDescription);
+            assertEquals(mContext.getString(R.string.a11y_forecast, description),
+                    row.mDescriptionA11y);
+            assertEquals(high, row.mHighText);
+            assertEquals(mContext.getString(R.string.a11y_high_temp, high), row.mHighA11y);
+            assertEquals(low, row.mLowText);
+            assertEquals(mContext.getString(R.string.a11y_low_temp, low), row.mLowA11y);
+            assertEquals(Utility.getIconResourceForWeatherCondition(weatherId), row.mIconResource);
+            assertEquals(Utility.getArtResourceForWeatherCondition(weatherId), row.mArtResource);
+        }
+        cursor.close();
+    }
+}
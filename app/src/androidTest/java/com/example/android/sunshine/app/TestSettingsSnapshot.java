@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/*
+    Checks that Utility's settings methods still give what the preferences hold, follow them
+    when they change, and don't read them on every call.
+ */
+public class TestSettingsSnapshot extends AndroidTestCase {
+
+    public void testMatchesPreferences() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String metric = mContext.getString(R.string.pref_units_metric);
+        String sunshineArtPack = mContext.getString(R.string.pref_art_pack_sunshine);
+        String artPack = prefs.getString(mContext.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+
+        assertEquals(prefs.getString(mContext.getString(R.string.pref_location_key),
+                        mContext.getString(R.string.pref_location_default)),
+                Utility.getPreferredLocation(mContext));
+        assertEquals(prefs.getString(mContext.getString(R.string.pref_units_key), metric)
+                .equals(metric), Utility.isMetric(mContext));
+        assertEquals(artPack.equals(sunshineArtPack), Utility.usingLocalGraphics(mContext));
+        assertEquals(String.format(artPack, "clear"),
+                Utility.getArtUrlForWeatherCondition(mContext, 800));
+    }
+
+    public void testFollowsChanges() throws Exception {
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String locationKey = mContext.getString(R.string.pref_location_key);
+        String unitsKey = mContext.getString(R.string.pref_units_key);
+        String artPackKey = mContext.getString(R.string.pref_art_pack_key);
+        String oldLocation = prefs.getString(locationKey, null);
+        String oldUnits = prefs.getString(unitsKey, null);
+        String oldArtPack = prefs.getString(artPackKey, null);
+
+        // Builds the snapshot, so its listener is registered before the change.
+        final boolean wasMetric = Utility.isMetric(mContext);
+        final boolean wasLocal = Utility.usingLocalGraphics(mContext);
+        final String location = "99705";
+        String units = mContext.getString(wasMetric
+                ? R.string.pref_units_imperial : R.string.pref_units_metric);
+        String artPack = mContext.getString(wasLocal
+                ? R.string.pref_art_pack_cute_dogs : R.string.pref_art_pack_sunshine);
+
+        try {
+            prefs.edit()
+                    .putString(locationKey, location)
+                    .putString(unitsKey, units)
+                    .putString(artPackKey, artPack)
+                    .commit();
+            // The listener runs on the main thread, not this one.
+            PollingCheck.check("Error: The settings didn't follow the preferences", 3000,
+                    new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            return location.equals(Utility.getPreferredLocation(mContext))
+                                    && Utility.isMetric(mContext) != wasMetric
+                                    && Utility.usingLocalGraphics(mContext) != wasLocal;
+                        }
+                    });
+            assertEquals(String.format(Locale.US, artPack, "clear"),
+                    Utility.getArtUrlForWeatherCondition(mContext, 800));
+        } finally {
+            SharedPreferences.Editor editor = prefs.edit();
+            restore(editor, locationKey, oldLocation);
+            restore(editor, unitsKey, oldUnits);
+            restore(editor, artPackKey, oldArtPack);
+            editor.commit();
+            // Leave the snapshot as it was for the tests after this one.
+            PollingCheck.check("Error: The settings didn't go back", 3000,
+                    new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            return Utility.isMetric(mContext) == wasMetric
+                                    && Utility.usingLocalGraphics(mContext) == wasLocal
+                                    && !location.equals(Utility.getPreferredLocation(mContext));
+                        }
+                    });
+        }
+    }
+
+    private static void restore(SharedPreferences.Editor editor, String key, String value) {
+        if (value != null) {
+            editor.putString(key, value);
+        } else {
+            editor.remove(key);
+        }
+    }
+
+    public void testLookupsDontReadPreferences() {
+        // The first call may build the snapshot.
+        SettingsSnapshot snapshot = SettingsSnapshot.get(mContext);
+        int lookups = SettingsSnapshot.getLookupCount();
+        int reads = SettingsSnapshot.getPreferenceReadCount();
+
+        for (int i = 0; i < 100; i++) {
+            Utility.isMetric(mContext);
+            Utility.getPreferredLocation(mContext);
+        }
+
+        assertSame(snapshot, SettingsSnapshot.get(mContext));
+        assertEquals(reads, SettingsSnapshot.getPreferenceReadCount());
+        if (SettingsSnapshot.isCounting()) {
+            assertEquals(lookups + 201, SettingsSnapshot.getLookupCount());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.util.Locale;
+
+/*
+    Checks what the condition table gives for the ids at the edges of its ranges, and for ids
+    outside of it.
+ */
+public class TestWeatherConditions extends AndroidTestCase {
+
+    public void testRangeEdges() {
+        checkCondition(200, R.drawable.ic_storm, R.drawable.art_storm, "storm",
+                R.string.condition_2xx);
+        checkCondition(232, R.drawable.ic_storm, R.drawable.art_storm, "storm",
+                R.string.condition_2xx);
+        checkCondition(233, -1, -1, null, 0);
+        checkCondition(511, R.drawable.ic_snow, R.drawable.art_snow, "snow",
+                R.string.condition_511);
+        // Both the fog and the storm range hold 761, the fog one comes first.
+        checkCondition(761, R.drawable.ic_fog, R.drawable.art_fog, "fog",
+                R.string.condition_761);
+        checkCondition(762, -1, -1, null, R.string.condition_762);
+        checkCondition(781, R.drawable.ic_storm, R.drawable.art_storm, "storm",
+                R.string.condition_781);
+        checkCondition(800, R.drawable.ic_clear, R.drawable.art_clear, "clear",
+                R.string.condition_800);
+        checkCondition(804, R.drawable.ic_cloudy, R.drawable.art_clouds, "clouds",
+                R.string.condition_804);
+    }
+
+    public void testUnknownIds() {
+        for (int id : new int[]{-1, 0, 999, 1000, Integer.MAX_VALUE}) {
+            checkCondition(id, -1, -1, null, 0);
+        }
+    }
+
+    private void checkCondition(int id, int icon, int art, String artName, int description) {
+        assertEquals("Icon of " + id, icon, Utility.getIconResourceForWeatherCondition(id));
+        assertEquals("Art of " + id, art, Utility.getArtResourceForWeatherCondition(id));
+
+        String artPack = SettingsSnapshot.get(mContext).mArtPackFormat;
+        assertEquals("Art URL of " + id,
+                artName == null ? null : String.format(Locale.US, artPack, artName),
+                Utility.getArtUrlForWeatherCondition(mContext, id));
+
+        String expected = description != 0 ? mContext.getString(description)
+                : mContext.getString(R.string.condition_unknown, id);
+        assertEquals("Description of " + id, expected,
+                Utility.getStringForWeatherCondition(mContext, id));
+    }
+}
@@ -234,4 +234,72 @@ public class TestDb extends AndroidTestCase {
         db.close();
         return locationRowId;
     }
+
+    /*
+        The forecast list and the widgets ask the provider for the days of a location from a
+        date on, sorted by date.  This checks SQLite answers that from the forecast index alone:
+        no scan of the weather table and no sort.
+     */
+    public void testForecastQueryUsesIndex() {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getReadableDatabase();
+        String plan = explainQueryPlan(db, "SELECT weather._id, date, short_desc, max, min, "
+                + "weather_id FROM weather INNER JOIN location "
+                + "ON weather.location_id = location._id "
+                + "WHERE weather.location_id = ? AND date >= ? ORDER BY date ASC");
+        assertTrue("Error: The forecast query doesn't use the forecast index: " + plan,
+                plan.contains("COVERING INDEX " + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE));
+        assertFalse("Error: The forecast query sorts its results: " + plan,
+                plan.contains("TEMP B-TREE"));
+
+        // The detail view asks for a single day, which the same index finds directly.
+        plan = explainQueryPlan(db, "SELECT * FROM weather INNER JOIN location "
+                + "ON weather.location_id = location._id "
+                + "WHERE weather.location_id = ? AND date = ?");
+        assertTrue("Error: The detail query doesn't use an index on the weather table: " + plan,
+                plan.contains("weather USING") && plan.contains("INDEX"));
+        db.close();
+    }
+
+    /*
+        Opening a version 2 database must keep the cached forecast and add the new index.
+     */
+    public void testUpgradeFromVersion2KeepsForecast() {
+        long locationRowId = insertLocation();
+
+        // Turn the fresh database back into what version 2 looked like.
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        assertTrue(db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues) != -1);
+        db.execSQL("DROP INDEX " + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE);
+        db.setVersion(2);
+        dbHelper.close();
+
+        dbHelper = new WeatherDbHelper(mContext);
+        db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                null, null, null, null, null, null);
+        assertTrue("Error: The upgrade dropped the cached forecast", cursor.moveToFirst());
+        TestUtilities.validateCurrentRecord("Error: The upgrade changed the cached forecast",
+                cursor, weatherValues);
+        cursor.close();
+
+        cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND name=?",
+                new String[]{WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE});
+        assertTrue("Error: The upgrade didn't create the forecast index", cursor.moveToFirst());
+        cursor.close();
+        dbHelper.close();
+    }
+
+    private static String explainQueryPlan(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, new String[]{"1", "0"});
+        StringBuilder plan = new StringBuilder();
+        int detailIndex = cursor.getColumnIndex("detail");
+        while (cursor.moveToNext()) {
+            plan.append(cursor.getString(detailIndex)).append('\n');
+        }
+        cursor.close();
+        return plan.toString();
+    }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks the forecast query cache returns what was stored, with the right types, and that
+    writes through the provider never leave an outdated forecast in it.
+ */
+public class TestForecastCache extends AndroidTestCase {
+
+    private static final String[] COLUMNS = {
+            WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_SHORT_DESC, WeatherEntry.COLUMN_MAX_TEMP};
+
+    private static Cursor createForecastCursor() {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        cursor.addRow(new Object[]{TestUtilities.TEST_DATE, "Asteroids", 75.5});
+        cursor.addRow(new Object[]{TestUtilities.TEST_DATE + 1, "Clear", 68.0});
+        return cursor;
+    }
+
+    public void testCachedResultKeepsValues() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        ForecastCache cache = new ForecastCache();
+        String key = ForecastCache.buildKey(WeatherEntry.buildWeatherLocation("94043"), COLUMNS, null);
+        assertNull(cache.get(key));
+
+        cache.put(key, 1, cache.getGeneration(), createForecastCursor()).close();
+        Cursor cursor = cache.get(key);
+        assertNotNull("Error: The result wasn't cached", cursor);
+        assertEquals(2, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(TestUtilities.TEST_DATE, cursor.getLong(0));
+        assertEquals("Asteroids", cursor.getString(1));
+        assertEquals(75.5, cursor.getDouble(2));
+        cursor.close();
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    public void testInvalidation() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        ForecastCache cache = new ForecastCache();
+        String key1 = ForecastCache.buildKey(WeatherEntry.buildWeatherLocation("94043"), COLUMNS, null);
+        String key2 = ForecastCache.buildKey(WeatherEntry.buildWeatherLocation("99705"), COLUMNS, null);
+        cache.put(key1, 1, cache.getGeneration(), createForecastCursor()).close();
+        cache.put(key2, 2, cache.getGeneration(), createForecastCursor()).close();
+
+        cache.invalidateLocation(1);
+        assertNull("Error: The changed location is still cached", cache.get(key1));
+        Cursor cursor = cache.get(key2);
+        assertNotNull("Error: Another location was dropped", cursor);
+        cursor.close();
+
+        // A query that started before a write must not put its result in the cache.
+        long generation = cache.getGeneration();
+        cache.invalidateLocation(1);
+        cache.put(key1, 1, generation, createForecastCursor()).close();
+        assertNull("Error: A result older than the last write was cached", cache.get(key1));
+    }
+
+    /*
+        Through the provider: the second forecast query is a hit, and storing a new forecast
+        makes the next query read it from the database.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void testProviderServesRepeatQueriesFromCache() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createWeatherValues(locationRowId));
+
+        Uri forecastUri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        int hitsBefore = getCacheStats().getInt(WeatherContract.RESULT_CACHE_HITS);
+        queryMaxTemp(forecastUri);
+        assertEquals(75.0, queryMaxTemp(forecastUri));
+        assertEquals("Error: The repeated query wasn't answered from the cache",
+                hitsBefore + 1, getCacheStats().getInt(WeatherContract.RESULT_CACHE_HITS));
+
+        ContentValues changed = TestUtilities.createWeatherValues(locationRowId);
+        changed.put(WeatherEntry.COLUMN_MAX_TEMP, 80);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{changed});
+        assertEquals("Error: The cache returned the forecast from before the write",
+                80.0, queryMaxTemp(forecastUri));
+    }
+
+    private double queryMaxTemp(Uri forecastUri) {
+        Cursor cursor = mContext.getContentResolver().query(forecastUri,
+                new String[]{WeatherEntry.COLUMN_MAX_TEMP}, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        double maxTemp = cursor.getDouble(0);
+        cursor.close();
+        return maxTemp;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private Bundle getCacheStats() {
+        return mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_GET_CACHE_STATS, null, null);
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.ComponentName;
 import android.content.ContentUris;
 import android.content.ContentValues;
@@ -24,6 +25,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
@@ -512,4 +514,86 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        Storing the same forecast twice shouldn't rewrite any row, and changing one day should
+        update that row in place instead of replacing it.
+     */
+    public void testUpsertOnlyWritesChangedRows() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        Bundle counts = upsert(createBulkInsertWeatherValues(locationRowId));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, counts.getInt(WeatherEntry.RESULT_INSERTED));
+        assertEquals(0, counts.getInt(WeatherEntry.RESULT_UPDATED));
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID}, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue(cursor.moveToFirst());
+        long firstRowId = cursor.getLong(0);
+        cursor.close();
+
+        counts = upsert(createBulkInsertWeatherValues(locationRowId));
+        assertEquals("Error: Unchanged rows were written again",
+                0, counts.getInt(WeatherEntry.RESULT_INSERTED) + counts.getInt(WeatherEntry.RESULT_UPDATED));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, counts.getInt(WeatherEntry.RESULT_UNCHANGED));
+
+        ContentValues[] changedValues = createBulkInsertWeatherValues(locationRowId);
+        changedValues[0].put(WeatherEntry.COLUMN_MAX_TEMP, 99);
+        counts = upsert(changedValues);
+        assertEquals(0, counts.getInt(WeatherEntry.RESULT_INSERTED));
+        assertEquals(1, counts.getInt(WeatherEntry.RESULT_UPDATED));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 1, counts.getInt(WeatherEntry.RESULT_UNCHANGED));
+
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: The updated row was replaced instead of updated",
+                firstRowId, cursor.getLong(cursor.getColumnIndex(WeatherEntry._ID)));
+        TestUtilities.validateCurrentRecord("testUpsertOnlyWritesChangedRows. Error validating "
+                + "the updated WeatherEntry", cursor, changedValues[0]);
+        cursor.close();
+    }
+
+    /*
+        The sync adapter's cleanup call should delete the days up to and including the date it
+        is given, and leave the later ones.
+     */
+    public void testDeleteOnOrBefore() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = ContentUris.parseId(locationUri);
+        ContentValues[] values = createBulkInsertWeatherValues(locationRowId);
+        upsert(values);
+
+        String lastOldDate = Long.toString(
+                WeatherContract.normalizeDate(values[1].getAsLong(WeatherEntry.COLUMN_DATE)));
+        Bundle result = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherEntry.METHOD_DELETE_ON_OR_BEFORE, lastOldDate, null);
+        assertEquals(2, result.getInt(WeatherEntry.RESULT_DELETED));
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 2, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        TestUtilities.validateCurrentRecord("testDeleteOnOrBefore. Error validating the first "
+                + "WeatherEntry left", cursor, values[2]);
+        cursor.close();
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private Bundle upsert(ContentValues[] values) {
+        Bundle extras = new Bundle();
+        extras.putParcelableArray(WeatherEntry.EXTRA_WEATHER_VALUES, values);
+        return mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherEntry.METHOD_UPSERT, null, extras);
+    }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.test.AndroidTestCase;
+
+/*
+    Checks the statement cache hands statements back out, and that rows inserted through the
+    cached statements the provider uses are stored as given.
+ */
+public class TestStatementCache extends AndroidTestCase {
+
+    private WeatherDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDbHelper = new WeatherDbHelper(mContext);
+        mDb = mDbHelper.getWritableDatabase();
+        mLocationRowId = mDb.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        assertTrue(mLocationRowId != -1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        super.tearDown();
+    }
+
+    public void testReleasedStatementIsReused() {
+        StatementCache cache = new StatementCache();
+        SQLiteStatement statement = cache.acquire(mDb, WeatherProvider.SQL_SELECT_LOCATION_ID);
+        SQLiteStatement second = cache.acquire(mDb, WeatherProvider.SQL_SELECT_LOCATION_ID);
+        assertNotSame("Error: A statement in use was handed out twice", statement, second);
+
+        statement.bindString(1, TestUtilities.TEST_LOCATION);
+        assertEquals(mLocationRowId, statement.simpleQueryForLong());
+        cache.release(mDb, WeatherProvider.SQL_SELECT_LOCATION_ID, statement);
+        cache.release(mDb, WeatherProvider.SQL_SELECT_LOCATION_ID, second);
+
+        SQLiteStatement reused = cache.acquire(mDb, WeatherProvider.SQL_SELECT_LOCATION_ID);
+        assertTrue("Error: A released statement wasn't reused",
+                reused == statement || reused == second);
+        // The bindings of the last use must not leak into the next one.
+        reused.bindString(1, TestUtilities.TEST_LOCATION);
+        assertEquals(mLocationRowId, reused.simpleQueryForLong());
+        cache.release(mDb, WeatherProvider.SQL_SELECT_LOCATION_ID, reused);
+        cache.close();
+    }
+
+    public void testCachedInsertStoresRows() {
+        ContentValues[] rows = createRows(14);
+        StatementCache cache = new StatementCache();
+        mDb.beginTransaction();
+        try {
+            // Statements taken from the cache for every row, like the provider.
+            for (ContentValues row : rows) {
+                SQLiteStatement lookup = cache.acquire(mDb, WeatherProvider.SQL_SELECT_LOCATION_ID);
+                lookup.bindString(1, TestUtilities.TEST_LOCATION);
+                assertEquals(mLocationRowId, lookup.simpleQueryForLong());
+                cache.release(mDb, WeatherProvider.SQL_SELECT_LOCATION_ID, lookup);
+
+                SQLiteStatement insert = cache.acquire(mDb, WeatherProvider.SQL_INSERT_WEATHER);
+                WeatherProvider.bindWeatherValues(insert, row);
+                assertTrue(insert.executeInsert() != -1);
+                cache.release(mDb, WeatherProvider.SQL_INSERT_WEATHER, insert);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        cache.close();
+
+        Cursor cursor = mDb.query(WeatherContract.WeatherEntry.TABLE_NAME, null, null, null,
+                null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Wrong number of rows stored", rows.length, cursor.getCount());
+        for (int i = 0; i < rows.length; i++) {
+            assertTrue(cursor.moveToNext());
+            TestUtilities.validateCurrentRecord("Error: Row " + i + " was stored wrong",
+                    cursor, rows[i]);
+        }
+        cursor.close();
+    }
+
+    private ContentValues[] createRows(int rowCount) {
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        ContentValues[] rows = new ContentValues[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            rows[i] = TestUtilities.createWeatherValues(mLocationRowId);
+            rows[i].put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    WeatherContract.normalizeDate(TestUtilities.TEST_DATE + i * millisecondsInADay));
+        }
+        return rows;
+    }
+}
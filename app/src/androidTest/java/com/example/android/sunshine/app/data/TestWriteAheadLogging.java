@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Checks the database runs with write-ahead logging, so forecast queries don't wait for a
+    sync rewriting the forecast.
+ */
+public class TestWriteAheadLogging extends AndroidTestCase {
+
+    private static final long READ_TIMEOUT_MILLIS = 5000;
+    private static final int FORECAST_DAYS = 14;
+
+    // The query the forecast list runs, minus the provider.
+    private static final String FORECAST_QUERY = "SELECT weather._id, date, short_desc, max, min, "
+            + "weather_id FROM weather INNER JOIN location "
+            + "ON weather.location_id = location._id "
+            + "WHERE weather.location_id = ? AND date >= ? ORDER BY date ASC";
+    private static final int COL_MAX_TEMP = 3;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    public void testWriteAheadLoggingIsEnabled() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        Cursor cursor = dbHelper.getReadableDatabase().rawQuery("PRAGMA journal_mode", null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: The database isn't in write-ahead logging mode",
+                "wal", cursor.getString(0).toLowerCase());
+        cursor.close();
+        dbHelper.close();
+    }
+
+    /*
+        With write-ahead logging the forecast list can query while a sync is in the middle of
+        rewriting the forecast, and sees the forecast as it was before the sync.
+     */
+    public void testReadDuringWriteTransaction() throws Throwable {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long locationRowId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        writeForecast(db, locationRowId, 0);
+
+        final String[] selectionArgs = {Long.toString(locationRowId), "0"};
+        final int[] result = {-1, -1};
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Cursor cursor = db.rawQuery(FORECAST_QUERY, selectionArgs);
+                    result[0] = cursor.getCount();
+                    if (cursor.moveToFirst()) {
+                        result[1] = cursor.getInt(COL_MAX_TEMP);
+                    }
+                    cursor.close();
+                } catch (Throwable t) {
+                    errors.add(t);
+                }
+            }
+        });
+
+        db.beginTransaction();
+        try {
+            writeForecastRows(db, locationRowId, 7);
+            reader.start();
+            reader.join(READ_TIMEOUT_MILLIS);
+            assertFalse("Error: The query waited for the write transaction", reader.isAlive());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        reader.join();
+        dbHelper.close();
+
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+        assertEquals("Error: The query didn't see the whole forecast", FORECAST_DAYS, result[0]);
+        assertEquals("Error: The query saw the uncommitted forecast", 0, result[1]);
+    }
+
+    // Rewrites the whole forecast in one transaction, like a sync does.
+    private static void writeForecast(SQLiteDatabase db, long locationRowId, int maxTemp) {
+        db.beginTransaction();
+        try {
+            writeForecastRows(db, locationRowId, maxTemp);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void writeForecastRows(SQLiteDatabase db, long locationRowId, int maxTemp) {
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    TestUtilities.TEST_DATE + i * millisecondsInADay);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, maxTemp);
+            db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues);
+        }
+    }
+}
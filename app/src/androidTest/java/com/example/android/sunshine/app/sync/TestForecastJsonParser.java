@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.ForecastBatch;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import org.json.JSONException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/*
+    Checks that the streaming forecast parser reads every value of a forecast response, and
+    rejects error, incomplete and truncated responses.
+ */
+public class TestForecastJsonParser extends AndroidTestCase {
+
+    static byte[] createForecastJson(int numDays) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},")
+                .append("\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0.0122,\"cnt\":").append(numDays)
+                .append(",\"list\":[");
+        for (int i = 0; i < numDays; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"dt\":").append(1419033600L + i * 86400L)
+                    .append(",\"temp\":{\"day\":15.1,\"min\":").append(5 + i % 7)
+                    .append(".25,\"max\":").append(18 + i % 5)
+                    .append(".5,\"night\":6.2,\"eve\":12.9,\"morn\":8.4},")
+                    .append("\"pressure\":1012.").append(i % 10)
+                    .append(",\"humidity\":").append(60 + i % 30)
+                    .append(",\"weather\":[{\"id\":").append(800 + i % 5)
+                    .append(",\"main\":\"Clouds\",\"description\":\"few clouds\",\"icon\":\"02d\"}],")
+                    .append("\"speed\":").append(1 + i % 4)
+                    .append(".3,\"deg\":").append((i * 37) % 360)
+                    .append(",\"clouds\":20}");
+        }
+        json.append("]}");
+        return json.toString().getBytes();
+    }
+
+    static class CollectingListener implements ForecastJsonParser.Listener {
+        String mCityName;
+        double mLat;
+        double mLon;
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            mCityName = cityName;
+            mLat = lat;
+            mLon = lon;
+        }
+    }
+
+    public void testStreamingParse() throws Throwable {
+        byte[] json = createForecastJson(14);
+
+        CollectingListener listener = new CollectingListener();
+        ForecastBatch days = new ForecastBatch();
+        int code = ForecastJsonParser.parse(new ByteArrayInputStream(json), days, listener);
+
+        assertEquals("Error: Unexpected message code", 200, code);
+        assertEquals("Mountain View", listener.mCityName);
+        assertEquals(37.386051, listener.mLat);
+        assertEquals(-122.083847, listener.mLon);
+        assertEquals("Error: Wrong number of days", 14, days.size());
+        for (int i = 0; i < days.size(); i++) {
+            // The location and the date are stamped by the sync adapter, not checked here.
+            ContentValues day = days.getContentValues(i);
+            String error = "Error: Day " + i + " differs from the response";
+            assertEquals(error, 60.0 + i % 30, day.getAsDouble(WeatherEntry.COLUMN_HUMIDITY));
+            assertEquals(error, 1012.0 + (i % 10) / 10.0,
+                    day.getAsDouble(WeatherEntry.COLUMN_PRESSURE), 1e-9);
+            assertEquals(error, 1.3 + i % 4, day.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED), 1e-9);
+            assertEquals(error, (double) ((i * 37) % 360),
+                    day.getAsDouble(WeatherEntry.COLUMN_DEGREES));
+            assertEquals(error, 18.5 + i % 5, day.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP));
+            assertEquals(error, 5.25 + i % 7, day.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP));
+            assertEquals(error, "Clouds", day.getAsString(WeatherEntry.COLUMN_SHORT_DESC));
+            assertEquals(error, 800 + i % 5,
+                    day.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID).intValue());
+        }
+    }
+
+    public void testErrorResponse() throws Throwable {
+        byte[] json = "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}".getBytes();
+        CollectingListener listener = new CollectingListener();
+        ForecastBatch days = new ForecastBatch();
+        assertEquals(404, ForecastJsonParser.parse(new ByteArrayInputStream(json), days, listener));
+        assertNull(listener.mCityName);
+        assertEquals(0, days.size());
+    }
+
+    public void testIncompleteDayIsRejected() throws Throwable {
+        byte[] json = "{\"list\":[{\"pressure\":1012.5,\"humidity\":80}]}".getBytes();
+        try {
+            ForecastJsonParser.parse(new ByteArrayInputStream(json), new ForecastBatch(),
+                    new CollectingListener());
+            fail("Error: A day without temperatures or weather was accepted");
+        } catch (JSONException expected) {
+        }
+    }
+
+    public void testMalformedResponseIsJsonException() throws Throwable {
+        byte[] json = "{\"list\":[{\"pressure\":".getBytes();
+        try {
+            ForecastJsonParser.parse(new ByteArrayInputStream(json), new ForecastBatch(),
+                    new CollectingListener());
+            fail("Error: A truncated response was accepted");
+        } catch (JSONException expected) {
+        } catch (IOException expected) {
+            // A stream ending mid value is reported as a read error, like a dropped connection.
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.ForecastBatch;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.util.Arrays;
+
+/*
+    Checks the bytes sent to the watch face follow the documented layout, so the watch's
+    decoder can read them, that the same forecast always gives the same bytes, and that the
+    sync time reaches the watch apart from them.
+ */
+public class TestWearWeatherPayload extends AndroidTestCase {
+
+    private static final int JULIAN_DAY = 2457007;
+
+    private static ForecastBatch createWeek(int days) {
+        ForecastBatch weather = new ForecastBatch();
+        for (int i = 0; i < days; i++) {
+            weather.addDay(1, 0, 800 + i, "Clear", -3.26 + i, 21.04 + i, 80, 1012.5, 2.5, 180);
+        }
+        return weather;
+    }
+
+    public void testLayout() throws Throwable {
+        byte[] payload = WearWeatherPayload.encode(createWeek(2), JULIAN_DAY, false);
+        assertEquals(WearWeatherPayload.HEADER_SIZE + 2 * WearWeatherPayload.DAY_SIZE,
+                payload.length);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        assertEquals(WearWeatherPayload.VERSION, in.readByte());
+        assertEquals("Error: Imperial units were flagged as metric", 0, in.readByte());
+        assertEquals(JULIAN_DAY, in.readInt());
+        assertEquals(2, in.readUnsignedByte());
+        assertEquals(800, in.readShort());
+        assertEquals(210, in.readShort());
+        assertEquals(-33, in.readShort());
+        assertEquals(801, in.readShort());
+        assertEquals(220, in.readShort());
+        assertEquals(-23, in.readShort());
+        assertEquals(-1, in.read());
+    }
+
+    public void testOnlyTheFirstDaysAreSent() {
+        byte[] payload = WearWeatherPayload.encode(
+                createWeek(WearWeatherPayload.MAX_DAYS + 2), JULIAN_DAY, true);
+        assertEquals(WearWeatherPayload.MAX_DAYS, payload[6]);
+        assertEquals(WearWeatherPayload.FLAG_METRIC, payload[1]);
+    }
+
+    public void testSameForecastSameBytes() {
+        assertTrue("Error: The same forecast encoded to different bytes", Arrays.equals(
+                WearWeatherPayload.encode(createWeek(7), JULIAN_DAY, true),
+                WearWeatherPayload.encode(createWeek(7), JULIAN_DAY, true)));
+        assertFalse("Error: A change of units didn't change the bytes", Arrays.equals(
+                WearWeatherPayload.encode(createWeek(7), JULIAN_DAY, true),
+                WearWeatherPayload.encode(createWeek(7), JULIAN_DAY, false)));
+    }
+
+    /*
+        A sync that finds the forecast unchanged must not give the watch new bytes, or every
+        sync would wake it.  It learns the forecast is current from the sync time message.
+     */
+    public void testUnchangedForecastSyncTime() throws Throwable {
+        long syncMillis = 1418860800000L;
+        byte[] message = WearWeatherPayload.encodeSyncTime(syncMillis);
+        assertEquals(WearWeatherPayload.SYNC_TIME_SIZE, message.length);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+        assertEquals("Error: The watch can't tell when the forecast was synced",
+                syncMillis, in.readLong());
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.text.format.Time;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats the days the app shows, for {@link Utility}'s date methods.
+ *
+ * The formatters and strings are made once per locale and time zone, today's julian day is
+ * worked out once and kept until midnight, and the labels of the forecast window (today and
+ * the next 13 days) are made along with it, so formatting a day the list shows is a lookup.
+ *
+ * Safe to use from any thread: SimpleDateFormat isn't, so everything is behind the instance's
+ * lock.  The work under it is small.
+ */
+public class DayFormatter {
+
+    // Days from today whose labels are kept, the two weeks the sync fetches.
+    static final int WINDOW_DAYS = 14;
+
+    private static final long HOUR_IN_MILLIS = 1000 * 60 * 60;
+
+    private static DayFormatter sInstance;
+
+    public static synchronized DayFormatter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DayFormatter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private final Context mContext;
+
+    // Made again when the locale or the time zone changes.
+    private Locale mLocale;
+    private String mTimeZoneId;
+    private SimpleDateFormat mDayNameFormat;
+    private SimpleDateFormat mShortDateFormat;
+    private SimpleDateFormat mMonthDayFormat;
+    private String mToday;
+    private String mTomorrow;
+
+    // Today, and until when that holds.
+    private long mGmtoff;
+    private int mTodayJulianDay;
+    private long mValidUntilMillis;
+
+    // Labels of the window, by days from today.
+    private final String[] mFriendlyLabels = new String[WINDOW_DAYS];
+    private String mLongTodayLabel;
+
+    DayFormatter(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * @return today's julian day in the device's time zone.
+     */
+    public synchronized int getTodayJulianDay() {
+        refresh();
+        return mTodayJulianDay;
+    }
+
+    /**
+     * @return the julian day of the date, with today's offset from UTC.
+     */
+    public synchronized int getJulianDay(long dateInMillis) {
+        refresh();
+        return Time.getJulianDay(dateInMillis, mGmtoff);
+    }
+
+    /**
+     * @see Utility#getFriendlyDayString(Context, long, boolean)
+     */
+    public synchronized String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        refresh();
+        int daysFromToday = Time.getJulianDay(dateInMillis, mGmtoff) - mTodayJulianDay;
+        if (displayLongToday && daysFromToday == 0) {
+            return mLongTodayLabel;
+        }
+        if (daysFromToday < 0 || daysFromToday >= WINDOW_DAYS) {
+            return formatFriendlyDay(dateInMillis, daysFromToday);
+        }
+        return mFriendlyLabels[daysFromToday];
+    }
+
+    /**
+     * @see Utility#getDayName(Context, long)
+     */
+    public synchronized String getDayName(long dateInMillis) {
+        refresh();
+        int daysFromToday = Time.getJulianDay(dateInMillis, mGmtoff) - mTodayJulianDay;
+        return formatDayName(dateInMillis, daysFromToday);
+    }
+
+    /**
+     * @see Utility#getFormattedMonthDay(Context, long)
+     */
+    public synchronized String getFormattedMonthDay(long dateInMillis) {
+        refresh();
+        return mMonthDayFormat.format(dateInMillis);
+    }
+
+    private String formatFriendlyDay(long dateInMillis, int daysFromToday) {
+        if (daysFromToday < 7) {
+            // If the input date is less than a week in the future, just return the day name.
+            return formatDayName(dateInMillis, daysFromToday);
+        }
+        // Otherwise, use the form "Mon Jun 3"
+        return mShortDateFormat.format(dateInMillis);
+    }
+
+    private String formatDayName(long dateInMillis, int daysFromToday) {
+        if (daysFromToday == 0) {
+            return mToday;
+        } else if (daysFromToday == 1) {
+            return mTomorrow;
+        }
+        return mDayNameFormat.format(dateInMillis);
+    }
+
+    /**
+     * Starts over if the day, the locale or the time zone changed since the last call.
+     */
+    private void refresh() {
+        long now = System.currentTimeMillis();
+        Locale locale = Locale.getDefault();
+        String timeZoneId = TimeZone.getDefault().getID();
+        boolean newFormats = !locale.equals(mLocale) || !timeZoneId.equals(mTimeZoneId);
+        if (!newFormats && now < mValidUntilMillis) {
+            return;
+        }
+
+        if (newFormats) {
+            mLocale = locale;
+            mTimeZoneId = timeZoneId;
+            mDayNameFormat = new SimpleDateFormat("EEEE");
+            mShortDateFormat = new SimpleDateFormat("EEE MMM dd");
+            mMonthDayFormat = new SimpleDateFormat("MMMM dd");
+            mToday = mContext.getString(R.string.today);
+            mTomorrow = mContext.getString(R.string.tomorrow);
+        }
+
+        Time time = new Time();
+        time.set(now);
+        mGmtoff = time.gmtoff;
+        mTodayJulianDay = Time.getJulianDay(now, mGmtoff);
+        // Good until midnight, or the next hour so a daylight saving change of the offset is
+        // picked up the same as it was when each call looked it up.
+        long midnight = time.setJulianDay(mTodayJulianDay + 1);
+        mValidUntilMillis = Math.min(midnight, (now / HOUR_IN_MILLIS + 1) * HOUR_IN_MILLIS);
+
+        // Any time of a day formats the same, its start will do.
+        for (int i = 0; i < WINDOW_DAYS; i++) {
+            mFriendlyLabels[i] = formatFriendlyDay(time.setJulianDay(mTodayJulianDay + i), i);
+        }
+        mLongTodayLabel = mContext.getString(R.string.format_full_friendly_date, mToday,
+                mMonthDayFormat.format(time.setJulianDay(mTodayJulianDay)));
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What changed between two lists of forecast rows, as the inserts, removes and changes that
+ * turn the old list into the new one.  Rows are matched by date, so after a sync only the days
+ * whose forecast changed get rebound, and at midnight yesterday is removed instead of every
+ * row being redrawn.
+ *
+ * Both lists have to be sorted by date, as the forecast query returns them, with no date
+ * twice.  {@link #compute} returns null otherwise, and the adapter falls back to a full change.
+ */
+final class ForecastDiff {
+
+    private static final int OP_INSERT = 0;
+    private static final int OP_REMOVE = 1;
+    private static final int OP_CHANGE = 2;
+
+    // The rows the diff starts from; it only applies to an adapter that shows these.
+    private final ForecastRow[] mOldRows;
+    // Type, position and count of each range, in the order they are to be applied.
+    private final List<int[]> mOps = new ArrayList<int[]>();
+
+    private int mInserted;
+    private int mRemoved;
+    private int mChanged;
+
+    private ForecastDiff(ForecastRow[] oldRows) {
+        mOldRows = oldRows;
+    }
+
+    /**
+     * @return the diff from the old rows to the new ones, or null if they aren't both sorted by
+     * date.  Cheap, but meant for a background thread along with building the rows.
+     */
+    static ForecastDiff compute(ForecastRow[] oldRows, ForecastRow[] newRows) {
+        if (oldRows == null || newRows == null || !isSorted(oldRows) || !isSorted(newRows)) {
+            return null;
+        }
+        ForecastDiff diff = new ForecastDiff(oldRows);
+        // The position in the list as it is after the ranges so far have been applied.
+        int position = 0;
+        int i = 0;
+        int j = 0;
+        while (i < oldRows.length || j < newRows.length) {
+            if (j == newRows.length || (i < oldRows.length && oldRows[i].mDate < newRows[j].mDate)) {
+                diff.add(OP_REMOVE, position);
+                i++;
+            } else if (i == oldRows.length || newRows[j].mDate < oldRows[i].mDate) {
+                diff.add(OP_INSERT, position);
+                position++;
+                j++;
+            } else {
+                // The first row has a layout of its own, so a day moving to or from the top is
+                // rebound even if its forecast is the same.
+                if (!oldRows[i].hasSameContent(newRows[j]) || (i == 0) != (j == 0)) {
+                    diff.add(OP_CHANGE, position);
+                }
+                position++;
+                i++;
+                j++;
+            }
+        }
+        return diff;
+    }
+
+    private static boolean isSorted(ForecastRow[] rows) {
+        for (int i = 1; i < rows.length; i++) {
+            if (rows[i].mDate <= rows[i - 1].mDate) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Extends the last range when the row follows on from it.
+    private void add(int type, int position) {
+        int[] last = mOps.isEmpty() ? null : mOps.get(mOps.size() - 1);
+        if (last != null && last[0] == type && (type == OP_REMOVE ? last[1] == position
+                : last[1] + last[2] == position)) {
+            last[2]++;
+        } else {
+            mOps.add(new int[]{type, position, 1});
+        }
+        switch (type) {
+            case OP_INSERT:
+                mInserted++;
+                break;
+            case OP_REMOVE:
+                mRemoved++;
+                break;
+            default:
+                mChanged++;
+        }
+    }
+
+    /**
+     * @return whether the diff was computed from these rows.
+     */
+    boolean startsFrom(ForecastRow[] rows) {
+        return mOldRows == rows;
+    }
+
+    /**
+     * Notifies the adapter of each range.  Call once the adapter shows the new rows.
+     */
+    void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int[] op : mOps) {
+            switch (op[0]) {
+                case OP_INSERT:
+                    adapter.notifyItemRangeInserted(op[1], op[2]);
+                    break;
+                case OP_REMOVE:
+                    adapter.notifyItemRangeRemoved(op[1], op[2]);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(op[1], op[2]);
+            }
+        }
+    }
+
+    int getInsertedCount() {
+        return mInserted;
+    }
+
+    int getRemovedCount() {
+        return mRemoved;
+    }
+
+    int getChangedCount() {
+        return mChanged;
+    }
+
+    @Override
+    public String toString() {
+        return mInserted + " inserted, " + mRemoved + " removed, " + mChanged + " changed";
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.v4.content.CursorLoader;
+import android.util.Log;
+
+/**
+ * Loads the forecast list like a CursorLoader, and formats its rows on the same background
+ * thread.  The cursor it delivers is a {@link RowCursor}, which the adapter binds from.  It
+ * also carries the {@link ForecastDiff} from the rows delivered before, so the adapter only
+ * updates the rows that changed.
+ */
+class ForecastLoader extends CursorLoader {
+
+    private static final String LOG_TAG = ForecastLoader.class.getSimpleName();
+
+    /**
+     * The query's cursor along with its rows, formatted.  Everything else, the columns and the
+     * content observer included, goes to the wrapped cursor.
+     */
+    static class RowCursor extends CursorWrapper {
+        private final ForecastRow[] mRows;
+        private final ForecastDiff mDiff;
+
+        RowCursor(Cursor cursor, ForecastRow[] rows, ForecastDiff diff) {
+            super(cursor);
+            mRows = rows;
+            mDiff = diff;
+        }
+
+        ForecastRow[] getRows() {
+            return mRows;
+        }
+
+        /**
+         * @return the changes from the rows delivered before these, null if there's no diff
+         * to go by.
+         */
+        ForecastDiff getDiff() {
+            return mDiff;
+        }
+    }
+
+    // Written on the main thread when a result is delivered, read by the next load.
+    private volatile ForecastRow[] mDeliveredRows;
+
+    ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+                   String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        long start = SystemClock.elapsedRealtime();
+        ForecastRow[] rows = ForecastRow.buildAll(getContext(), cursor);
+        ForecastDiff diff = ForecastDiff.compute(mDeliveredRows, rows);
+        Log.d(LOG_TAG, "Formatted " + rows.length + " rows in "
+                + (SystemClock.elapsedRealtime() - start) + "ms, "
+                + (diff != null ? diff : "no diff"));
+        return new RowCursor(cursor, rows, diff);
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (!isReset()) {
+            mDeliveredRows = cursor instanceof RowCursor ? ((RowCursor) cursor).getRows() : null;
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        mDeliveredRows = null;
+    }
+}
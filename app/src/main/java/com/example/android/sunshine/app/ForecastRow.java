@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+
+/**
+ * One forecast list item, with every string and resource it shows already worked out.
+ * {@link ForecastLoader} builds them on its background thread, so binding a row in
+ * {@link ForecastAdapter} only sets what's here on the views.
+ *
+ * Rows are immutable.  A change of units or art pack changes the weather URI's content, which
+ * reloads and so rebuilds them.
+ */
+final class ForecastRow {
+
+    final long mDate;
+    final int mWeatherId;
+
+    // "Wednesday" and, for the "today" layout, "Today, June 24".
+    final String mDateText;
+    final String mLongDateText;
+
+    final String mDescription;
+    final String mDescriptionA11y;
+    final String mHighText;
+    final String mHighA11y;
+    final String mLowText;
+    final String mLowA11y;
+
+    final int mIconResource;
+    final int mArtResource;
+    // Null when the art pack is the local graphics.
+    final String mArtUrl;
+
+    private ForecastRow(Context context, Cursor cursor, boolean localGraphics) {
+        mDate = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        mWeatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+
+        mDateText = Utility.getFriendlyDayString(context, mDate, false);
+        mLongDateText = Utility.getFriendlyDayString(context, mDate, true);
+
+        mDescription = Utility.getStringForWeatherCondition(context, mWeatherId);
+        mDescriptionA11y = context.getString(R.string.a11y_forecast, mDescription);
+
+        mHighText = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+        mHighA11y = context.getString(R.string.a11y_high_temp, mHighText);
+        mLowText = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+        mLowA11y = context.getString(R.string.a11y_low_temp, mLowText);
+
+        mIconResource = Utility.getIconResourceForWeatherCondition(mWeatherId);
+        mArtResource = Utility.getArtResourceForWeatherCondition(mWeatherId);
+        mArtUrl = localGraphics ? null : Utility.getArtUrlForWeatherCondition(context, mWeatherId);
+    }
+
+    /**
+     * @return whether the other row shows the same as this one, wherever it is in the list.
+     */
+    boolean hasSameContent(ForecastRow other) {
+        return mDate == other.mDate
+                && mWeatherId == other.mWeatherId
+                && mIconResource == other.mIconResource
+                && mArtResource == other.mArtResource
+                && mDateText.equals(other.mDateText)
+                && mLongDateText.equals(other.mLongDateText)
+                && mDescription.equals(other.mDescription)
+                && mHighText.equals(other.mHighText)
+                && mLowText.equals(other.mLowText)
+                && (mArtUrl == null ? other.mArtUrl == null : mArtUrl.equals(other.mArtUrl));
+    }
+
+    /**
+     * Builds a row for every day in the cursor, in the order of the cursor.  The cursor's
+     * position is left at the end.
+     *
+     * @param cursor a cursor over {@link ForecastFragment}'s forecast columns
+     */
+    static ForecastRow[] buildAll(Context context, Cursor cursor) {
+        ForecastRow[] rows = new ForecastRow[cursor.getCount()];
+        boolean localGraphics = Utility.usingLocalGraphics(context);
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            rows[cursor.getPosition()] = new ForecastRow(context, cursor, localGraphics);
+        }
+        return rows;
+    }
+}
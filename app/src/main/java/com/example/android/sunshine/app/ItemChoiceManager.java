@@ -44,6 +44,17 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        // Checked items keep their check when rows are inserted or removed ahead of them.
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            moveCheckedPositions(positionStart, 0, itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            moveCheckedPositions(positionStart, itemCount, -itemCount);
+        }
     };
 
     private ItemChoiceManager() {
@@ -53,6 +64,7 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
@@ -154,6 +166,31 @@ public class ItemChoiceManager {
         mCheckedIdStates.clear();
     }
 
+    /**
+     * Unchecks the removed positions and moves the checked ones after them by the offset.
+     */
+    void moveCheckedPositions(int positionStart, int removedCount, int offset) {
+        SparseBooleanArray checkStates = new SparseBooleanArray();
+        for (int i = 0; i < mCheckStates.size(); i++) {
+            int position = mCheckStates.keyAt(i);
+            if (position < positionStart) {
+                checkStates.put(position, mCheckStates.valueAt(i));
+            } else if (position >= positionStart + removedCount) {
+                checkStates.put(position + offset, mCheckStates.valueAt(i));
+            }
+        }
+        mCheckStates = checkStates;
+
+        for (int i = mCheckedIdStates.size() - 1; i >= 0; i--) {
+            int position = mCheckedIdStates.valueAt(i);
+            if (position >= positionStart + removedCount) {
+                mCheckedIdStates.setValueAt(i, position + offset);
+            } else if (position >= positionStart) {
+                mCheckedIdStates.removeAt(i);
+            }
+        }
+    }
+
     void confirmCheckedPositionsById(int oldItemCount) {
         // Clear out the positional check states, we'll rebuild it below from IDs.
         mCheckStates.clear();
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+
+/**
+ * Times the frames while a RecyclerView scrolls, and logs them when it stops: how many, the
+ * average and longest frame, how many took longer than a 60fps frame, how many rows were
+ * bound, and how often the settings and the preferences behind them were read meanwhile.
+ * The frames after the forecast adapter's data changes, when a sync finishes with the list on
+ * screen, are timed and logged the same way.  Fling the forecast list or sync, and read
+ * "adb logcat -s ScrollFrameMonitor" to compare binding changes on a device.
+ *
+ * Only added with "adb shell setprop log.tag.ScrollFrameMonitor DEBUG", before the list
+ * is created.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+class ScrollFrameMonitor extends RecyclerView.OnScrollListener
+        implements Choreographer.FrameCallback {
+
+    static final String LOG_TAG = ScrollFrameMonitor.class.getSimpleName();
+
+    private static final long FRAME_NANOS = 1000000000L / 60;
+    // Frames timed after a data change, long enough for the item animations.
+    private static final int UPDATE_FRAMES = 30;
+
+    private final ForecastAdapter mAdapter;
+
+    private boolean mScrolling;
+    private int mUpdateFramesLeft;
+    private boolean mTiming;
+    private long mLastFrameNanos;
+    private int mFrames;
+    private int mSlowFrames;
+    private long mTotalNanos;
+    private long mMaxNanos;
+    private int mSettingsLookups;
+    private int mPreferenceReads;
+    private int mBindCount;
+
+    ScrollFrameMonitor(ForecastAdapter adapter) {
+        mAdapter = adapter;
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                onUpdate();
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                onUpdate();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                onUpdate();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                onUpdate();
+            }
+        });
+    }
+
+    /**
+     * Only call on Jelly Bean and up, this class can't load below.
+     */
+    static boolean isEnabled() {
+        return Log.isLoggable(LOG_TAG, Log.DEBUG);
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        boolean scrolling = newState != RecyclerView.SCROLL_STATE_IDLE;
+        if (scrolling == mScrolling) {
+            return;
+        }
+        mScrolling = scrolling;
+        if (scrolling) {
+            start();
+        } else {
+            stop("Scrolled");
+        }
+    }
+
+    // One data change comes as several ranges, they're timed together.
+    private void onUpdate() {
+        start();
+        mUpdateFramesLeft = UPDATE_FRAMES;
+    }
+
+    private void start() {
+        if (mTiming) {
+            return;
+        }
+        mTiming = true;
+        mLastFrameNanos = 0;
+        mSettingsLookups = SettingsSnapshot.getLookupCount();
+        mPreferenceReads = SettingsSnapshot.getPreferenceReadCount();
+        mBindCount = mAdapter.getBindCount();
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void stop(String what) {
+        if (!mTiming || mScrolling || mUpdateFramesLeft > 0) {
+            return;
+        }
+        mTiming = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        log(what);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (mLastFrameNanos != 0) {
+            long frameNanos = frameTimeNanos - mLastFrameNanos;
+            mFrames++;
+            mTotalNanos += frameNanos;
+            mMaxNanos = Math.max(mMaxNanos, frameNanos);
+            if (frameNanos > FRAME_NANOS + FRAME_NANOS / 2) {
+                mSlowFrames++;
+            }
+        }
+        mLastFrameNanos = frameTimeNanos;
+        if (mUpdateFramesLeft > 0 && --mUpdateFramesLeft == 0 && !mScrolling) {
+            stop("Updated");
+            return;
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void log(String what) {
+        if (mFrames > 0) {
+            Log.d(LOG_TAG, what + " " + mFrames + " frames, " + mTotalNanos / mFrames / 1000
+                    + "us average, " + mMaxNanos / 1000 + "us max, " + mSlowFrames + " slow, "
+                    + (mAdapter.getBindCount() - mBindCount) + " rows bound");
+            if (SettingsSnapshot.isCounting()) {
+                Log.d(LOG_TAG, "Settings looked up "
+                        + (SettingsSnapshot.getLookupCount() - mSettingsLookups)
+                        + " times, preferences read "
+                        + (SettingsSnapshot.getPreferenceReadCount() - mPreferenceReads)
+                        + " times");
+            }
+        }
+        mFrames = 0;
+        mSlowFrames = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+    }
+}
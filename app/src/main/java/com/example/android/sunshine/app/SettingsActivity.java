@@ -16,10 +16,12 @@
 package com.example.android.sunshine.app;
 
 import android.annotation.TargetApi;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.ListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceActivity;
@@ -139,6 +141,8 @@ public class SettingsActivity extends PreferenceActivity
         } else if ( key.equals(getString(R.string.pref_units_key)) ) {
             // units have changed. update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // and the watch face, which shows the temperatures in the units it's sent
+            sendWeatherToWearable();
         } else if ( key.equals(getString(R.string.pref_location_status_key)) ) {
             // our location status has changed.  Update the summary accordingly
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
@@ -149,6 +153,26 @@ public class SettingsActivity extends PreferenceActivity
         }
     }
 
+    /*
+        Sends the stored forecast to the watch again, with the new units.  Posted, so it runs
+        after every other listener and reads the units from the new settings snapshot, and
+        then off the UI thread, since it queries the database.
+     */
+    private void sendWeatherToWearable() {
+        final Context context = getApplicationContext();
+        new Handler().post(new Runnable() {
+            @Override
+            public void run() {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        SunshineSyncAdapter.sendWeatherToWearable(context);
+                    }
+                }).start();
+            }
+        });
+    }
+
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     @Override
     public Intent getParentActivityIntent() {
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The settings the forecast is shown with, read once from the default SharedPreferences.
+ * {@link Utility}'s settings methods return its fields, so a list row, widget row or
+ * notification no longer looks up the preferences and their resource keys for each of them.
+ *
+ * A snapshot never changes.  A listener on the preferences replaces the current one when the
+ * location, the units or the art pack change.  Listeners run on the main thread, in no set
+ * order: another listener reacting to the same change may still be handed the old snapshot,
+ * but anything it posts or loads afterwards gets the new one.
+ *
+ * Lookups are only counted with "adb shell setprop log.tag.SettingsSnapshot DEBUG" before the
+ * app starts.
+ */
+public final class SettingsSnapshot {
+
+    static final String LOG_TAG = SettingsSnapshot.class.getSimpleName();
+
+    final String mLocation;
+    final boolean mMetric;
+    // The format of the art pack's URLs, to fill with an art name.
+    final String mArtPackFormat;
+    final boolean mLocalGraphics;
+
+    private static volatile SettingsSnapshot sCurrent;
+    // SharedPreferences only keeps a weak reference to its listeners, this is the strong one.
+    private static Listener sListener;
+
+    private static final boolean sCounting = Log.isLoggable(LOG_TAG, Log.DEBUG);
+    // Calls served from a snapshot, when counting; each of them read the preferences before.
+    private static final AtomicInteger sLookups = new AtomicInteger();
+    // Times the preferences were actually read, to build a snapshot.
+    private static final AtomicInteger sPreferenceReads = new AtomicInteger();
+
+    private SettingsSnapshot(Context context, SharedPreferences prefs) {
+        mLocation = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        String metric = context.getString(R.string.pref_units_metric);
+        mMetric = prefs.getString(context.getString(R.string.pref_units_key), metric)
+                .equals(metric);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        mArtPackFormat = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        mLocalGraphics = mArtPackFormat.equals(sunshineArtPack);
+        sPreferenceReads.incrementAndGet();
+    }
+
+    /**
+     * @return the current settings.  Cheap enough to call once per value shown.
+     */
+    public static SettingsSnapshot get(Context context) {
+        if (sCounting) {
+            sLookups.incrementAndGet();
+        }
+        SettingsSnapshot current = sCurrent;
+        if (current != null) {
+            return current;
+        }
+        synchronized (SettingsSnapshot.class) {
+            if (sCurrent == null) {
+                Context appContext = context.getApplicationContext();
+                SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+                // Listen first, so a change made while the snapshot is read isn't missed.
+                sListener = new Listener(appContext);
+                prefs.registerOnSharedPreferenceChangeListener(sListener);
+                sCurrent = new SettingsSnapshot(appContext, prefs);
+            }
+            return sCurrent;
+        }
+    }
+
+    /**
+     * @return whether lookups are counted, see the class comment.
+     */
+    public static boolean isCounting() {
+        return sCounting;
+    }
+
+    /**
+     * @return how many times the settings were asked for since the process started, 0 when
+     * not counting.  Before snapshots, each of these read the preferences.
+     */
+    public static int getLookupCount() {
+        return sLookups.get();
+    }
+
+    /**
+     * @return how many times the preferences were read for a snapshot since the process started.
+     */
+    public static int getPreferenceReadCount() {
+        return sPreferenceReads.get();
+    }
+
+    private static class Listener implements SharedPreferences.OnSharedPreferenceChangeListener {
+        private final Context mContext;
+        private final String mLocationKey;
+        private final String mUnitsKey;
+        private final String mArtPackKey;
+
+        Listener(Context context) {
+            mContext = context;
+            mLocationKey = context.getString(R.string.pref_location_key);
+            mUnitsKey = context.getString(R.string.pref_units_key);
+            mArtPackKey = context.getString(R.string.pref_art_pack_key);
+        }
+
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+            if (mLocationKey.equals(key) || mUnitsKey.equals(key) || mArtPackKey.equals(key)) {
+                sCurrent = new SettingsSnapshot(mContext, prefs);
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.android.sunshine.app;
 
+import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
@@ -7,22 +9,111 @@ import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.WearableListenerService;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers the watch face when it asks for the weather.  If the last sync is recent, the forecast
+ * already in the database is sent back; only a stale forecast is worth an expedited sync.
+ * Either way the watch is told when the forecast was synced: if it already has the same
+ * forecast, nothing else reaches it, and it would keep asking.
+ */
 public class WearWeatherService extends WearableListenerService {
 
     private static final String TAG = WearWeatherService.class.getSimpleName();
 
     private static final String WEATHER_PATH = "/weather";
 
+    // A forecast synced within the periodic sync interval is as new as the phone would have it.
+    private static final long FRESH_MILLIS =
+            TimeUnit.SECONDS.toMillis(SunshineSyncAdapter.SYNC_INTERVAL);
+
+    // Requests this close to the last one get the same answer, so they are dropped.
+    private static final long REQUEST_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    // Counted for as long as the process lives.  onDataChanged is only ever called on the
+    // service's one background thread.
+    private static long sLastRequestMillis;
+    private static int sRequests;
+    private static int sCollapsedRequests;
+    private static int sCacheAnswers;
+    private static int sSyncs;
+
+    // Watches waiting for a sync to finish, told its time by answerPendingRequests.
+    private static final Set<String> sPendingNodes = new HashSet<String>();
+
     @Override
     public void onDataChanged(DataEventBuffer dataEvents) {
+        // The watches that asked, by node id; the item's host is the node that put it.
+        Set<String> nodes = new HashSet<String>();
         for (DataEvent dataEvent : dataEvents) {
             if (dataEvent.getType() == DataEvent.TYPE_CHANGED) {
                 String path = dataEvent.getDataItem().getUri().getPath();
                 Log.d(TAG, path);
                 if (path.equals(WEATHER_PATH)) {
-                    SunshineSyncAdapter.syncImmediately(this);
+                    if (!nodes.isEmpty()) {
+                        sCollapsedRequests++;
+                    }
+                    nodes.add(dataEvent.getDataItem().getUri().getHost());
+                    sRequests++;
+                }
+            }
+        }
+        if (!nodes.isEmpty()) {
+            onWeatherRequested(nodes);
+        }
+    }
+
+    private void onWeatherRequested(Set<String> nodes) {
+        long now = SystemClock.elapsedRealtime();
+        if (sLastRequestMillis != 0 && now - sLastRequestMillis < REQUEST_WINDOW_MILLIS) {
+            // The answer to the last request covers this one.
+            sCollapsedRequests++;
+        } else {
+            sLastRequestMillis = now;
+            long syncAge = System.currentTimeMillis() - SunshineSyncAdapter.getLastSyncTime(this);
+            if (syncAge < FRESH_MILLIS && sendStoredWeather()) {
+                sCacheAnswers++;
+                for (String node : nodes) {
+                    SunshineSyncAdapter.sendSyncTimeToWearable(this, node);
+                }
+            } else {
+                sSyncs++;
+                synchronized (sPendingNodes) {
+                    sPendingNodes.addAll(nodes);
                 }
+                SunshineSyncAdapter.syncImmediately(this);
             }
         }
+        Log.d(TAG, "Watch weather requests: " + sRequests + " received, " + sCollapsedRequests
+                + " collapsed, " + sCacheAnswers + " answered from the database, " + sSyncs
+                + " synced");
+    }
+
+    /**
+     * Puts the stored forecast in the "/weather-info" DataItem.  If the watch already has the
+     * same bytes, the DataItem doesn't change and the watch isn't woken up.
+     *
+     * @return false if there's no forecast for today.
+     */
+    private boolean sendStoredWeather() {
+        Log.d(TAG, "Sending the stored weather");
+        return SunshineSyncAdapter.sendWeatherToWearable(this);
+    }
+
+    /**
+     * Tells every watch that asked for the weather while the phone was syncing when the sync
+     * finished.  Called by the sync adapter after a successful sync.
+     */
+    public static void answerPendingRequests(Context context) {
+        Set<String> nodes;
+        synchronized (sPendingNodes) {
+            nodes = new HashSet<String>(sPendingNodes);
+            sPendingNodes.clear();
+        }
+        for (String node : nodes) {
+            SunshineSyncAdapter.sendSyncTimeToWearable(context, node);
+        }
     }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What the app shows for each OpenWeatherMap condition id: the icon, the art, the name of the
+ * art in the art packs, and the description.  The table has an entry for every id from 0 to
+ * {@link #MAX_WEATHER_ID}, built once, so {@link #get(int)} is an array read where
+ * {@link Utility}'s methods used to walk a chain of ranges.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ *
+ * The watch face has the same ranges in its own WeatherConditions, for its icons.
+ */
+final class WeatherConditions {
+
+    static final int MAX_WEATHER_ID = 999;
+
+    static final class Condition {
+        // -1 when there's no icon or art for the id.
+        final int mIconResource;
+        final int mArtResource;
+        // Goes into the art pack's URL format, null when there's no art.
+        final String mArtName;
+        // 0 when the id has no description of its own, see Utility.getStringForWeatherCondition.
+        final int mDescriptionResource;
+
+        private Condition(Look look, int descriptionResource) {
+            mIconResource = look.mIconResource;
+            mArtResource = look.mArtResource;
+            mArtName = look.mArtName;
+            mDescriptionResource = descriptionResource;
+        }
+    }
+
+    // The images a range of ids share.
+    private static final class Look {
+        final int mIconResource;
+        final int mArtResource;
+        final String mArtName;
+
+        Look(int iconResource, int artResource, String artName) {
+            mIconResource = iconResource;
+            mArtResource = artResource;
+            mArtName = artName;
+        }
+    }
+
+    private static final Look NONE = new Look(-1, -1, null);
+    private static final Look STORM = new Look(R.drawable.ic_storm, R.drawable.art_storm, "storm");
+    private static final Look LIGHT_RAIN =
+            new Look(R.drawable.ic_light_rain, R.drawable.art_light_rain, "light_rain");
+    private static final Look RAIN = new Look(R.drawable.ic_rain, R.drawable.art_rain, "rain");
+    private static final Look SNOW = new Look(R.drawable.ic_snow, R.drawable.art_snow, "snow");
+    private static final Look FOG = new Look(R.drawable.ic_fog, R.drawable.art_fog, "fog");
+    private static final Look CLEAR = new Look(R.drawable.ic_clear, R.drawable.art_clear, "clear");
+    private static final Look LIGHT_CLOUDS =
+            new Look(R.drawable.ic_light_clouds, R.drawable.art_light_clouds, "light_clouds");
+    // The icon and the art are named differently for this one.
+    private static final Look CLOUDS = new Look(R.drawable.ic_cloudy, R.drawable.art_clouds, "clouds");
+
+    // First, last, description.
+    private static final int[][] DESCRIPTION_RANGES = {
+            {200, 232, R.string.condition_2xx},
+            {300, 321, R.string.condition_3xx},
+            {500, 500, R.string.condition_500},
+            {501, 501, R.string.condition_501},
+            {502, 502, R.string.condition_502},
+            {503, 503, R.string.condition_503},
+            {504, 504, R.string.condition_504},
+            {511, 511, R.string.condition_511},
+            {520, 520, R.string.condition_520},
+            {531, 531, R.string.condition_531},
+            {600, 600, R.string.condition_600},
+            {601, 601, R.string.condition_601},
+            {602, 602, R.string.condition_602},
+            {611, 611, R.string.condition_611},
+            {612, 612, R.string.condition_612},
+            {615, 615, R.string.condition_615},
+            {616, 616, R.string.condition_616},
+            {620, 620, R.string.condition_620},
+            {621, 621, R.string.condition_621},
+            {622, 622, R.string.condition_622},
+            {701, 701, R.string.condition_701},
+            {711, 711, R.string.condition_711},
+            {721, 721, R.string.condition_721},
+            {731, 731, R.string.condition_731},
+            {741, 741, R.string.condition_741},
+            {751, 751, R.string.condition_751},
+            {761, 761, R.string.condition_761},
+            {762, 762, R.string.condition_762},
+            {771, 771, R.string.condition_771},
+            {781, 781, R.string.condition_781},
+            {800, 800, R.string.condition_800},
+            {801, 801, R.string.condition_801},
+            {802, 802, R.string.condition_802},
+            {803, 803, R.string.condition_803},
+            {804, 804, R.string.condition_804},
+            {900, 900, R.string.condition_900},
+            {901, 901, R.string.condition_901},
+            {902, 902, R.string.condition_902},
+            {903, 903, R.string.condition_903},
+            {904, 904, R.string.condition_904},
+            {905, 905, R.string.condition_905},
+            {906, 906, R.string.condition_906},
+            {951, 951, R.string.condition_951},
+            {952, 952, R.string.condition_952},
+            {953, 953, R.string.condition_953},
+            {954, 954, R.string.condition_954},
+            {955, 955, R.string.condition_955},
+            {956, 956, R.string.condition_956},
+            {957, 957, R.string.condition_957},
+            {958, 958, R.string.condition_958},
+            {959, 959, R.string.condition_959},
+            {960, 960, R.string.condition_960},
+            {961, 961, R.string.condition_961},
+            {962, 962, R.string.condition_962},
+    };
+
+    // For ids outside the table.
+    private static final Condition UNKNOWN = new Condition(NONE, 0);
+
+    private static final Condition[] sConditions = buildTable();
+
+    private WeatherConditions() {
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return what to show for the condition, never null
+     */
+    static Condition get(int weatherId) {
+        if (weatherId < 0 || weatherId > MAX_WEATHER_ID) {
+            return UNKNOWN;
+        }
+        return sConditions[weatherId];
+    }
+
+    private static Condition[] buildTable() {
+        // Where ranges overlap the first one wins, as it did in the chains, so 761 is fog.
+        Look[] looks = new Look[MAX_WEATHER_ID + 1];
+        fill(looks, 200, 232, STORM);
+        fill(looks, 300, 321, LIGHT_RAIN);
+        fill(looks, 500, 504, RAIN);
+        fill(looks, 511, 511, SNOW);
+        fill(looks, 520, 531, RAIN);
+        fill(looks, 600, 622, SNOW);
+        fill(looks, 701, 761, FOG);
+        fill(looks, 761, 761, STORM);
+        fill(looks, 781, 781, STORM);
+        fill(looks, 800, 800, CLEAR);
+        fill(looks, 801, 801, LIGHT_CLOUDS);
+        fill(looks, 802, 804, CLOUDS);
+
+        int[] descriptions = new int[MAX_WEATHER_ID + 1];
+        for (int[] range : DESCRIPTION_RANGES) {
+            for (int id = range[0]; id <= range[1]; id++) {
+                if (descriptions[id] == 0) {
+                    descriptions[id] = range[2];
+                }
+            }
+        }
+
+        // Ids without a description of their own share one entry per look.
+        Condition[] conditions = new Condition[MAX_WEATHER_ID + 1];
+        Map<Look, Condition> undescribed = new HashMap<Look, Condition>();
+        undescribed.put(NONE, UNKNOWN);
+        for (int id = 0; id <= MAX_WEATHER_ID; id++) {
+            Look look = looks[id] != null ? looks[id] : NONE;
+            if (descriptions[id] != 0) {
+                conditions[id] = new Condition(look, descriptions[id]);
+            } else {
+                Condition condition = undescribed.get(look);
+                if (condition == null) {
+                    condition = new Condition(look, 0);
+                    undescribed.put(look, condition);
+                }
+                conditions[id] = condition;
+            }
+        }
+        return conditions;
+    }
+
+    private static void fill(Look[] looks, int first, int last, Look look) {
+        for (int id = first; id <= last; id++) {
+            if (looks[id] == null) {
+                looks[id] = look;
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Weather rows stored column by column in primitive arrays, one entry per day.  A forecast
+ * travels from the parser to the database as one of these instead of as a ContentValues per
+ * day, so none of its numbers get boxed on the way.
+ *
+ * Descriptions are interned: OWM only uses a handful ("Clear", "Clouds", "Rain"...), so each
+ * distinct one is kept once and the days refer to it by index.
+ */
+public class ForecastBatch implements Parcelable {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int mSize;
+
+    private long[] mLocationIds;
+    private long[] mDates;
+    private int[] mWeatherIds;
+    private int[] mDescriptionIndexes;
+    private double[] mMinTemps;
+    private double[] mMaxTemps;
+    private double[] mHumidities;
+    private double[] mPressures;
+    private double[] mWindSpeeds;
+    private double[] mDegrees;
+
+    private final List<String> mDescriptions = new ArrayList<String>();
+    private final Map<String, Integer> mDescriptionIndexByValue = new HashMap<String, Integer>();
+
+    public ForecastBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ForecastBatch(int capacity) {
+        allocate(Math.max(capacity, 1));
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Appends a day.
+     *
+     * @return the row of the new day
+     */
+    public int addDay(long locationId, long date, int weatherId, String description,
+                      double minTemp, double maxTemp, double humidity, double pressure,
+                      double windSpeed, double degrees) {
+        if (mSize == mDates.length) {
+            grow(mSize * 2);
+        }
+        int row = mSize++;
+        mLocationIds[row] = locationId;
+        mDates[row] = date;
+        mWeatherIds[row] = weatherId;
+        mDescriptionIndexes[row] = intern(description);
+        mMinTemps[row] = minTemp;
+        mMaxTemps[row] = maxTemp;
+        mHumidities[row] = humidity;
+        mPressures[row] = pressure;
+        mWindSpeeds[row] = windSpeed;
+        mDegrees[row] = degrees;
+        return row;
+    }
+
+    /**
+     * Appends every day of another batch.
+     */
+    public void addAll(ForecastBatch other) {
+        if (mSize + other.mSize > mDates.length) {
+            grow(mSize + other.mSize);
+        }
+        for (int row = 0; row < other.mSize; row++) {
+            addDay(other.mLocationIds[row], other.mDates[row], other.mWeatherIds[row],
+                    other.getDescription(row), other.mMinTemps[row], other.mMaxTemps[row],
+                    other.mHumidities[row], other.mPressures[row], other.mWindSpeeds[row],
+                    other.mDegrees[row]);
+        }
+    }
+
+    public long getLocationId(int row) {
+        return mLocationIds[row];
+    }
+
+    public void setLocationId(int row, long locationId) {
+        mLocationIds[row] = locationId;
+    }
+
+    public long getDate(int row) {
+        return mDates[row];
+    }
+
+    public void setDate(int row, long date) {
+        mDates[row] = date;
+    }
+
+    public int getWeatherId(int row) {
+        return mWeatherIds[row];
+    }
+
+    public String getDescription(int row) {
+        return mDescriptions.get(mDescriptionIndexes[row]);
+    }
+
+    public double getMinTemp(int row) {
+        return mMinTemps[row];
+    }
+
+    public double getMaxTemp(int row) {
+        return mMaxTemps[row];
+    }
+
+    public double getHumidity(int row) {
+        return mHumidities[row];
+    }
+
+    public double getPressure(int row) {
+        return mPressures[row];
+    }
+
+    public double getWindSpeed(int row) {
+        return mWindSpeeds[row];
+    }
+
+    public double getDegrees(int row) {
+        return mDegrees[row];
+    }
+
+    /**
+     * @return true if the row holds the same weather as the row of another batch.
+     */
+    public boolean hasSameDay(int row, ForecastBatch other, int otherRow) {
+        return mLocationIds[row] == other.mLocationIds[otherRow]
+                && mDates[row] == other.mDates[otherRow]
+                && mWeatherIds[row] == other.mWeatherIds[otherRow]
+                && getDescription(row).equals(other.getDescription(otherRow))
+                && mMinTemps[row] == other.mMinTemps[otherRow]
+                && mMaxTemps[row] == other.mMaxTemps[otherRow]
+                && mHumidities[row] == other.mHumidities[otherRow]
+                && mPressures[row] == other.mPressures[otherRow]
+                && mWindSpeeds[row] == other.mWindSpeeds[otherRow]
+                && mDegrees[row] == other.mDegrees[otherRow];
+    }
+
+    /**
+     * @return the row as ContentValues, for the code paths that still need them.
+     */
+    public ContentValues getContentValues(int row) {
+        ContentValues weatherValues = new ContentValues(10);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, mLocationIds[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, mDates[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, mWeatherIds[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, getDescription(row));
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, mMinTemps[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, mMaxTemps[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, mHumidities[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, mPressures[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, mWindSpeeds[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, mDegrees[row]);
+        return weatherValues;
+    }
+
+    public ContentValues[] toContentValues() {
+        ContentValues[] values = new ContentValues[mSize];
+        for (int row = 0; row < mSize; row++) {
+            values[row] = getContentValues(row);
+        }
+        return values;
+    }
+
+    private int intern(String description) {
+        Integer index = mDescriptionIndexByValue.get(description);
+        if (index == null) {
+            index = mDescriptions.size();
+            mDescriptions.add(description);
+            mDescriptionIndexByValue.put(description, index);
+        }
+        return index;
+    }
+
+    private void allocate(int capacity) {
+        mLocationIds = new long[capacity];
+        mDates = new long[capacity];
+        mWeatherIds = new int[capacity];
+        mDescriptionIndexes = new int[capacity];
+        mMinTemps = new double[capacity];
+        mMaxTemps = new double[capacity];
+        mHumidities = new double[capacity];
+        mPressures = new double[capacity];
+        mWindSpeeds = new double[capacity];
+        mDegrees = new double[capacity];
+    }
+
+    private void grow(int capacity) {
+        long[] locationIds = mLocationIds;
+        long[] dates = mDates;
+        int[] weatherIds = mWeatherIds;
+        int[] descriptionIndexes = mDescriptionIndexes;
+        double[] minTemps = mMinTemps;
+        double[] maxTemps = mMaxTemps;
+        double[] humidities = mHumidities;
+        double[] pressures = mPressures;
+        double[] windSpeeds = mWindSpeeds;
+        double[] degrees = mDegrees;
+
+        allocate(capacity);
+        System.arraycopy(locationIds, 0, mLocationIds, 0, mSize);
+        System.arraycopy(dates, 0, mDates, 0, mSize);
+        System.arraycopy(weatherIds, 0, mWeatherIds, 0, mSize);
+        System.arraycopy(descriptionIndexes, 0, mDescriptionIndexes, 0, mSize);
+        System.arraycopy(minTemps, 0, mMinTemps, 0, mSize);
+        System.arraycopy(maxTemps, 0, mMaxTemps, 0, mSize);
+        System.arraycopy(humidities, 0, mHumidities, 0, mSize);
+        System.arraycopy(pressures, 0, mPressures, 0, mSize);
+        System.arraycopy(windSpeeds, 0, mWindSpeeds, 0, mSize);
+        System.arraycopy(degrees, 0, mDegrees, 0, mSize);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(mSize);
+        dest.writeStringList(mDescriptions);
+        for (int row = 0; row < mSize; row++) {
+            dest.writeLong(mLocationIds[row]);
+            dest.writeLong(mDates[row]);
+            dest.writeInt(mWeatherIds[row]);
+            dest.writeInt(mDescriptionIndexes[row]);
+            dest.writeDouble(mMinTemps[row]);
+            dest.writeDouble(mMaxTemps[row]);
+            dest.writeDouble(mHumidities[row]);
+            dest.writeDouble(mPressures[row]);
+            dest.writeDouble(mWindSpeeds[row]);
+            dest.writeDouble(mDegrees[row]);
+        }
+    }
+
+    public static final Parcelable.Creator<ForecastBatch> CREATOR =
+            new Parcelable.Creator<ForecastBatch>() {
+                @Override
+                public ForecastBatch createFromParcel(Parcel source) {
+                    int size = source.readInt();
+                    List<String> descriptions = new ArrayList<String>();
+                    source.readStringList(descriptions);
+
+                    ForecastBatch batch = new ForecastBatch(size);
+                    for (int row = 0; row < size; row++) {
+                        batch.addDay(source.readLong(), source.readLong(), source.readInt(),
+                                descriptions.get(source.readInt()), source.readDouble(),
+                                source.readDouble(), source.readDouble(), source.readDouble(),
+                                source.readDouble(), source.readDouble());
+                    }
+                    return batch;
+                }
+
+                @Override
+                public ForecastBatch[] newArray(int size) {
+                    return new ForecastBatch[size];
+                }
+            };
+}
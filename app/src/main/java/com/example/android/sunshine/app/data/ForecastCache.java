@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Build;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the results of the latest forecast queries in memory.  After a sync the forecast list,
+ * the detail view, both widgets and the notification all ask for the same few rows within
+ * milliseconds; the first query reads them from SQLite and the others get a copy.
+ *
+ * Results are keyed by the query URI (location setting and dates), projection and sort order.
+ * The provider invalidates the entries of a location whenever it writes to its weather rows,
+ * and everything when it can't tell which locations a write touched.
+ */
+class ForecastCache {
+
+    // A handful of recent queries: the list, the detail of a couple of days, the widgets.
+    private static final int MAX_ENTRIES = 16;
+
+    // Larger results aren't the repeated forecast queries this cache is for.
+    private static final int MAX_ROWS = 64;
+
+    private static class Entry {
+        final long mLocationId;
+        final String[] mColumnNames;
+        final Object[][] mRows;
+
+        Entry(long locationId, String[] columnNames, Object[][] rows) {
+            mLocationId = locationId;
+            mColumnNames = columnNames;
+            mRows = rows;
+        }
+    }
+
+    // Access ordered, so the eldest entry is the least recently used one.
+    private final LinkedHashMap<String, Entry> mEntries =
+            new LinkedHashMap<String, Entry>(MAX_ENTRIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    // Bumped by every invalidation.  A result read before a write finished must not be cached.
+    private long mGeneration;
+
+    private int mHitCount;
+    private int mMissCount;
+
+    static String buildKey(Uri uri, String[] projection, String sortOrder) {
+        return uri.toString() + '|' + Arrays.toString(projection) + '|' + sortOrder;
+    }
+
+    /**
+     * @return a cursor over the cached result, or null if there is none.
+     */
+    synchronized Cursor get(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        MatrixCursor cursor = new MatrixCursor(entry.mColumnNames, entry.mRows.length);
+        for (Object[] row : entry.mRows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    /**
+     * @return the generation to hand to {@link #put} with the result of a query that starts now.
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Caches the result of a query, unless the data changed since the query started.
+     *
+     * @param locationId the location the rows belong to
+     * @param generation what {@link #getGeneration} returned before the query ran
+     * @param cursor the result, which is closed if it gets copied
+     * @return a cursor to return in place of the one passed in
+     */
+    Cursor put(String key, long locationId, long generation, Cursor cursor) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB
+                || cursor.getCount() > MAX_ROWS) {
+            // Without Cursor.getType the values can't be copied with their types.
+            return cursor;
+        }
+
+        Entry entry = copy(locationId, cursor);
+        cursor.close();
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mEntries.put(key, entry);
+            }
+        }
+        MatrixCursor copy = new MatrixCursor(entry.mColumnNames, entry.mRows.length);
+        for (Object[] row : entry.mRows) {
+            copy.addRow(row);
+        }
+        return copy;
+    }
+
+    /**
+     * Drops the cached results of one location.
+     */
+    synchronized void invalidateLocation(long locationId) {
+        mGeneration++;
+        Iterator<Entry> entries = mEntries.values().iterator();
+        while (entries.hasNext()) {
+            if (entries.next().mLocationId == locationId) {
+                entries.remove();
+            }
+        }
+    }
+
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mEntries.clear();
+    }
+
+    synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static Entry copy(long locationId, Cursor cursor) {
+        int columnCount = cursor.getColumnCount();
+        Object[][] rows = new Object[cursor.getCount()][];
+        cursor.moveToPosition(-1);
+        for (int i = 0; cursor.moveToNext(); i++) {
+            Object[] row = new Object[columnCount];
+            for (int column = 0; column < columnCount; column++) {
+                switch (cursor.getType(column)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        row[column] = cursor.getLong(column);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        row[column] = cursor.getDouble(column);
+                        break;
+                    case Cursor.FIELD_TYPE_STRING:
+                        row[column] = cursor.getString(column);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        row[column] = cursor.getBlob(column);
+                        break;
+                    default:
+                        row[column] = null;
+                }
+            }
+            rows[i] = row;
+        }
+        return new Entry(locationId, cursor.getColumnNames(), rows);
+    }
+}
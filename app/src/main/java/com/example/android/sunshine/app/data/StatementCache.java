@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps compiled SQLiteStatements around between calls, so the hot statements of the provider
+ * are parsed and planned by SQLite once instead of on every insert, lookup or delete.
+ *
+ * A statement carries its bindings, so it can only be used by one thread at a time.  Callers
+ * {@link #acquire} a statement, bind and run it, then {@link #release} it.  A thread that finds
+ * no idle statement compiles its own, which ends up in the cache when released.
+ */
+class StatementCache {
+
+    // Binder threads can run provider calls side by side, a couple of copies is enough.
+    private static final int MAX_IDLE_PER_SQL = 2;
+
+    private final Map<String, List<SQLiteStatement>> mIdleStatements =
+            new HashMap<String, List<SQLiteStatement>>();
+
+    // Statements belong to the database they were compiled on.
+    private SQLiteDatabase mDatabase;
+
+    /**
+     * @return a compiled statement for the SQL, with no bindings.  Hand it back with
+     * {@link #release} when done.
+     */
+    SQLiteStatement acquire(SQLiteDatabase db, String sql) {
+        synchronized (this) {
+            if (db != mDatabase) {
+                closeIdleStatements();
+                mDatabase = db;
+            }
+            List<SQLiteStatement> idle = mIdleStatements.get(sql);
+            if (idle != null && !idle.isEmpty()) {
+                return idle.remove(idle.size() - 1);
+            }
+        }
+        // Compiling needs a database connection, which may be held by a transaction on another
+        // thread.  Don't wait for it while holding the lock that thread may need to release.
+        return db.compileStatement(sql);
+    }
+
+    void release(SQLiteDatabase db, String sql, SQLiteStatement statement) {
+        statement.clearBindings();
+        synchronized (this) {
+            if (db == mDatabase && db.isOpen()) {
+                List<SQLiteStatement> idle = mIdleStatements.get(sql);
+                if (idle == null) {
+                    idle = new ArrayList<SQLiteStatement>(MAX_IDLE_PER_SQL);
+                    mIdleStatements.put(sql, idle);
+                }
+                if (idle.size() < MAX_IDLE_PER_SQL) {
+                    idle.add(statement);
+                    return;
+                }
+            }
+        }
+        statement.close();
+    }
+
+    /**
+     * Closes the idle statements.  Statements that are in use get closed when released.
+     */
+    synchronized void close() {
+        closeIdleStatements();
+        mDatabase = null;
+    }
+
+    private void closeIdleStatements() {
+        for (List<SQLiteStatement> idle : mIdleStatements.values()) {
+            for (SQLiteStatement statement : idle) {
+                statement.close();
+            }
+        }
+        mIdleStatements.clear();
+    }
+}
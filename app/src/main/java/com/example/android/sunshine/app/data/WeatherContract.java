@@ -44,6 +44,14 @@ public class WeatherContract {
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
 
+    // Provider call returning how often the forecast queries were answered from memory, so the
+    // query cache can be checked on a device.  The counts come back in the returned Bundle.
+    // Needs Honeycomb.
+    public static final String METHOD_GET_CACHE_STATS = "get_cache_stats";
+    public static final String RESULT_CACHE_HITS = "cache_hits";
+    public static final String RESULT_CACHE_MISSES = "cache_misses";
+    public static final String RESULT_CACHE_SIZE = "cache_size";
+
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
     public static long normalizeDate(long startDate) {
@@ -126,6 +134,27 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Provider call that stores weather rows like bulkInsert does, but reports how many
+        // of them were inserted, updated or already stored with the same values.  The rows go
+        // in as a ContentValues array under EXTRA_WEATHER_VALUES, the counts come back in the
+        // returned Bundle.  Needs Honeycomb, use bulkInsert below that.
+        public static final String METHOD_UPSERT = "upsert_weather";
+        public static final String EXTRA_WEATHER_VALUES = "weather_values";
+        public static final String RESULT_INSERTED = "inserted";
+        public static final String RESULT_UPDATED = "updated";
+        public static final String RESULT_UNCHANGED = "unchanged";
+
+        // Same as METHOD_UPSERT, with the days in a ForecastBatch under EXTRA_WEATHER_BATCH
+        // instead of one ContentValues each.  This is what the sync adapter uses.
+        public static final String METHOD_UPSERT_BATCH = "upsert_weather_batch";
+        public static final String EXTRA_WEATHER_BATCH = "weather_batch";
+
+        // Provider call that deletes the weather of every location up to and including the
+        // normalized date passed as the arg, so old days don't build up.  The count comes back
+        // in the returned Bundle.  Needs Honeycomb, use delete with COLUMN_DATE <= ? below that.
+        public static final String METHOD_DELETE_ON_OR_BEFORE = "delete_weather_on_or_before";
+        public static final String RESULT_DELETED = "deleted";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
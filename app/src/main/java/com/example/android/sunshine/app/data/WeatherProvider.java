@@ -20,16 +20,36 @@ import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class WeatherProvider extends ContentProvider {
 
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
+
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    // Compiled statements of the hot paths, kept between calls.
+    private final StatementCache mStatementCache = new StatementCache();
+
+    // Results of the forecast queries, for the screens and widgets that ask right after another.
+    private final ForecastCache mForecastCache = new ForecastCache();
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
@@ -51,39 +71,60 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.LocationEntry._ID);
     }
 
-    //location.location_setting = ?
-    private static final String sLocationSettingSelection =
-            WeatherContract.LocationEntry.TABLE_NAME+
-                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
+    // The location setting is resolved to its _ID with a cached statement first, so the joined
+    // queries filter on weather.location_id instead of comparing location_setting strings.
 
-    //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
-            WeatherContract.LocationEntry.TABLE_NAME+
-                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+    //weather.location_id = ?
+    private static final String sLocationIdSelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? ";
+
+    //weather.location_id = ? AND date >= ?
+    private static final String sLocationIdWithStartDateSelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
-    //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
-            WeatherContract.LocationEntry.TABLE_NAME +
-                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+    //weather.location_id = ? AND date = ?
+    private static final String sLocationIdAndDaySelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    static final String SQL_SELECT_LOCATION_ID = "SELECT " + WeatherContract.LocationEntry._ID +
+            " FROM " + WeatherContract.LocationEntry.TABLE_NAME +
+            " WHERE " + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?";
+
+    static final String SQL_DELETE_WEATHER_ON_OR_BEFORE = "DELETE FROM " +
+            WeatherContract.WeatherEntry.TABLE_NAME + " WHERE " +
+            WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?";
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+        String cacheKey = ForecastCache.buildKey(uri, projection, sortOrder);
+        Cursor cached = mForecastCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = mForecastCache.getGeneration();
+
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        long locationRowId = getLocationId(db, locationSetting);
+        String locationId = Long.toString(locationRowId);
 
         String[] selectionArgs;
         String selection;
 
         if (startDate == 0) {
-            selection = sLocationSettingSelection;
-            selectionArgs = new String[]{locationSetting};
+            selection = sLocationIdSelection;
+            selectionArgs = new String[]{locationId};
         } else {
-            selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
-            selection = sLocationSettingWithStartDateSelection;
+            selectionArgs = new String[]{locationId, Long.toString(startDate)};
+            selection = sLocationIdWithStartDateSelection;
         }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        Cursor cursor = sWeatherByLocationSettingQueryBuilder.query(db,
                 projection,
                 selection,
                 selectionArgs,
@@ -91,21 +132,48 @@ public class WeatherProvider extends ContentProvider {
                 null,
                 sortOrder
         );
+        return mForecastCache.put(cacheKey, locationRowId, generation, cursor);
     }
 
     private Cursor getWeatherByLocationSettingAndDate(
             Uri uri, String[] projection, String sortOrder) {
+        String cacheKey = ForecastCache.buildKey(uri, projection, sortOrder);
+        Cursor cached = mForecastCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = mForecastCache.getGeneration();
+
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        long locationRowId = getLocationId(db, locationSetting);
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        Cursor cursor = sWeatherByLocationSettingQueryBuilder.query(db,
                 projection,
-                sLocationSettingAndDaySelection,
-                new String[]{locationSetting, Long.toString(date)},
+                sLocationIdAndDaySelection,
+                new String[]{Long.toString(locationRowId), Long.toString(date)},
                 null,
                 null,
                 sortOrder
         );
+        return mForecastCache.put(cacheKey, locationRowId, generation, cursor);
+    }
+
+    /**
+     * @return the _ID of the location with the given setting, or -1 if there is none.  -1
+     * matches no weather rows, so the queries above still return a cursor with the right columns.
+     */
+    private long getLocationId(SQLiteDatabase db, String locationSetting) {
+        SQLiteStatement statement = mStatementCache.acquire(db, SQL_SELECT_LOCATION_ID);
+        try {
+            statement.bindString(1, locationSetting);
+            return statement.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            return -1;
+        } finally {
+            mStatementCache.release(db, SQL_SELECT_LOCATION_ID, statement);
+        }
     }
 
     /*
@@ -233,11 +301,23 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                long _id;
+                if (isCompleteWeatherRow(values)) {
+                    _id = insertWeather(db, values);
+                } else {
+                    // Let SQLiteDatabase deal with partial rows, and complain about them.
+                    _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                }
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                Long locationId = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+                if (locationId != null) {
+                    mForecastCache.invalidateLocation(locationId);
+                } else {
+                    mForecastCache.invalidateAll();
+                }
                 break;
             }
             case LOCATION: {
@@ -246,6 +326,8 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                // Queries for a location that didn't exist yet were cached as empty.
+                mForecastCache.invalidateAll();
                 break;
             }
             default:
@@ -276,11 +358,37 @@ public class WeatherProvider extends ContentProvider {
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
+            // The selection could match the rows of any location.
+            mForecastCache.invalidateAll();
             getContext().getContentResolver().notifyChange(uri, null);
         }
         return rowsDeleted;
     }
 
+    /**
+     * The METHOD_DELETE_ON_OR_BEFORE call: the sync adapter runs it after every sync, so it
+     * reuses one compiled statement instead of having delete() build and compile the SQL.
+     */
+    @TargetApi(11)
+    private int deleteWeatherOnOrBefore(String date) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        SQLiteStatement statement = mStatementCache.acquire(db, SQL_DELETE_WEATHER_ON_OR_BEFORE);
+        int rowsDeleted;
+        try {
+            statement.bindString(1, date);
+            rowsDeleted = statement.executeUpdateDelete();
+        } finally {
+            mStatementCache.release(db, SQL_DELETE_WEATHER_ON_OR_BEFORE, statement);
+        }
+        if (rowsDeleted != 0) {
+            // The old days of any location could be gone.
+            mForecastCache.invalidateAll();
+            getContext().getContentResolver().notifyChange(
+                    WeatherContract.WeatherEntry.CONTENT_URI, null);
+        }
+        return rowsDeleted;
+    }
+
     private void normalizeDate(ContentValues values) {
         // normalize the date value
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
@@ -310,44 +418,420 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
+            mForecastCache.invalidateAll();
             getContext().getContentResolver().notifyChange(uri, null);
         }
         return rowsUpdated;
     }
 
+    /*
+        Weather rows are written through this upsert instead of a plain insert: the table's
+        UNIQUE ... ON CONFLICT REPLACE would delete and re-insert every day of the forecast on
+        every sync, giving each row a new _ID even when nothing about it changed.  So bulkInsert
+        returns the number of rows that were inserted or updated, and only notifies if that's
+        more than zero.
+     */
     @Override
     public int bulkInsert(Uri uri, ContentValues[] values) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
-                int returnCount = 0;
-                try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
+                UpsertCounts counts = upsertWeather(values);
+                return counts.mInserted + counts.mUpdated;
+            default:
+                return super.bulkInsert(uri, values);
+        }
+    }
+
+    @Override
+    @TargetApi(11)
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.WeatherEntry.METHOD_UPSERT.equals(method)
+                || WeatherContract.WeatherEntry.METHOD_UPSERT_BATCH.equals(method)) {
+            UpsertCounts counts;
+            if (WeatherContract.WeatherEntry.METHOD_UPSERT_BATCH.equals(method)) {
+                extras.setClassLoader(ForecastBatch.class.getClassLoader());
+                ForecastBatch weather =
+                        extras.getParcelable(WeatherContract.WeatherEntry.EXTRA_WEATHER_BATCH);
+                counts = upsertWeather(weather);
+            } else {
+                Parcelable[] parcelables =
+                        extras.getParcelableArray(WeatherContract.WeatherEntry.EXTRA_WEATHER_VALUES);
+                ContentValues[] values = new ContentValues[parcelables.length];
+                for (int i = 0; i < parcelables.length; i++) {
+                    values[i] = (ContentValues) parcelables[i];
+                }
+                counts = upsertWeather(values);
+            }
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.WeatherEntry.RESULT_INSERTED, counts.mInserted);
+            result.putInt(WeatherContract.WeatherEntry.RESULT_UPDATED, counts.mUpdated);
+            result.putInt(WeatherContract.WeatherEntry.RESULT_UNCHANGED, counts.mUnchanged);
+            return result;
+        }
+        if (WeatherContract.WeatherEntry.METHOD_DELETE_ON_OR_BEFORE.equals(method)) {
+            int rowsDeleted = deleteWeatherOnOrBefore(arg);
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.WeatherEntry.RESULT_DELETED, rowsDeleted);
+            return result;
+        }
+        if (WeatherContract.METHOD_GET_CACHE_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.RESULT_CACHE_HITS, mForecastCache.getHitCount());
+            result.putInt(WeatherContract.RESULT_CACHE_MISSES, mForecastCache.getMissCount());
+            result.putInt(WeatherContract.RESULT_CACHE_SIZE, mForecastCache.size());
+            return result;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    static class UpsertCounts {
+        int mInserted;
+        int mUpdated;
+        int mUnchanged;
+    }
+
+    // The weather columns in the order they are bound to the upsert statements.
+    static final String[] UPSERT_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    private static final String[] STORED_WEATHER_PROJECTION = buildStoredWeatherProjection();
+
+    // Indices into STORED_WEATHER_PROJECTION, which is _ID followed by UPSERT_COLUMNS.
+    private static final int COL_STORED_ID = 0;
+    private static final int COL_STORED_LOC_KEY = 1;
+    private static final int COL_STORED_DATE = 2;
+    private static final int COL_STORED_SHORT_DESC = 3;
+    private static final int COL_STORED_WEATHER_ID = 4;
+    private static final int COL_STORED_MIN_TEMP = 5;
+    private static final int COL_STORED_MAX_TEMP = 6;
+    private static final int COL_STORED_HUMIDITY = 7;
+    private static final int COL_STORED_PRESSURE = 8;
+    private static final int COL_STORED_WIND_SPEED = 9;
+    private static final int COL_STORED_DEGREES = 10;
+
+    private static final String sStoredWeatherSortOrder =
+            WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+    static final String SQL_INSERT_WEATHER = buildInsertWeatherSql();
+    static final String SQL_UPDATE_WEATHER = buildUpdateWeatherSql();
+
+    //location_id = ? AND date >= ? AND date <= ?
+    private static final String sLocationIdWithDateRangeSelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " <= ? ";
+
+    private static String[] buildStoredWeatherProjection() {
+        String[] projection = new String[UPSERT_COLUMNS.length + 1];
+        projection[0] = WeatherContract.WeatherEntry._ID;
+        System.arraycopy(UPSERT_COLUMNS, 0, projection, 1, UPSERT_COLUMNS.length);
+        return projection;
+    }
+
+    private static String buildInsertWeatherSql() {
+        StringBuilder sql = new StringBuilder("INSERT INTO ")
+                .append(WeatherContract.WeatherEntry.TABLE_NAME).append(" (");
+        for (int i = 0; i < UPSERT_COLUMNS.length; i++) {
+            sql.append(i > 0 ? ", " : "").append(UPSERT_COLUMNS[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < UPSERT_COLUMNS.length; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        return sql.append(')').toString();
+    }
+
+    // Binds the same columns as the insert, plus the _ID of the row to update at the end.
+    private static String buildUpdateWeatherSql() {
+        StringBuilder sql = new StringBuilder("UPDATE ")
+                .append(WeatherContract.WeatherEntry.TABLE_NAME).append(" SET ");
+        for (int i = 0; i < UPSERT_COLUMNS.length; i++) {
+            sql.append(i > 0 ? ", " : "").append(UPSERT_COLUMNS[i]).append(" = ?");
+        }
+        return sql.append(" WHERE ").append(WeatherContract.WeatherEntry._ID).append(" = ?")
+                .toString();
+    }
+
+    /**
+     * ContentValues entry point of the upsert, for bulkInsert and the METHOD_UPSERT call.  The
+     * rows are copied into a {@link ForecastBatch}; rows missing a weather column are logged
+     * and left out, same as the insert would have refused them.
+     */
+    private UpsertCounts upsertWeather(ContentValues[] values) {
+        ForecastBatch weather = new ForecastBatch(values.length);
+        for (ContentValues value : values) {
+            Long locationId = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+            Long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            Integer weatherId = value.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+            String description = value.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC);
+            Double minTemp = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+            Double maxTemp = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+            Double humidity = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_HUMIDITY);
+            Double pressure = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_PRESSURE);
+            Double windSpeed = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED);
+            Double degrees = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_DEGREES);
+            if (locationId == null || date == null || weatherId == null || description == null
+                    || minTemp == null || maxTemp == null || humidity == null
+                    || pressure == null || windSpeed == null || degrees == null) {
+                Log.e(LOG_TAG, "Error inserting incomplete weather row " + value);
+                continue;
+            }
+            weather.addDay(locationId, date, weatherId, description, minTemp, maxTemp,
+                    humidity, pressure, windSpeed, degrees);
+        }
+        return upsertWeather(weather);
+    }
+
+    /**
+     * Compares the given days with what is stored for the same locations and dates, and only
+     * writes the days that are new or whose values changed.  Everything happens in one
+     * transaction, and observers are notified only if something was written.
+     *
+     * The days are bound straight from the batch's arrays, so apart from the stored rows read
+     * for the comparison nothing gets allocated per day.
+     */
+    private UpsertCounts upsertWeather(ForecastBatch weather) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        UpsertCounts counts = new UpsertCounts();
+
+        // Normalize the dates with a single Time, and note the locations in the order they come.
+        Time time = new Time();
+        List<Long> locationIds = new ArrayList<Long>();
+        long lastLocationId = -1;
+        for (int row = 0; row < weather.size(); row++) {
+            weather.setDate(row, normalizeDate(time, weather.getDate(row)));
+            long locationId = weather.getLocationId(row);
+            if (locationId != lastLocationId && !locationIds.contains(locationId)) {
+                locationIds.add(locationId);
+            }
+            lastLocationId = locationId;
+        }
+
+        List<Long> changedLocationIds = new ArrayList<Long>(locationIds.size());
+        beginWeatherTransaction(db);
+        SQLiteStatement insertStatement = mStatementCache.acquire(db, SQL_INSERT_WEATHER);
+        SQLiteStatement updateStatement = mStatementCache.acquire(db, SQL_UPDATE_WEATHER);
+        try {
+            for (Long locationId : locationIds) {
+                int writtenBefore = counts.mInserted + counts.mUpdated;
+                StoredWeather stored = getStoredWeather(db, locationId, weather);
+
+                for (int row = 0; row < weather.size(); row++) {
+                    if (weather.getLocationId(row) != locationId) {
+                        continue;
+                    }
+                    int storedRow = stored.indexOfDate(weather.getDate(row));
+                    if (storedRow < 0) {
+                        bindWeatherValues(insertStatement, weather, row);
+                        try {
+                            insertStatement.executeInsert();
+                            counts.mInserted++;
+                        } catch (SQLException e) {
+                            // Same as db.insert: a bad row is logged and left out.
+                            Log.e(LOG_TAG, "Error inserting " + weather.getContentValues(row), e);
                         }
+                    } else if (stored.mWeather.hasSameDay(storedRow, weather, row)) {
+                        counts.mUnchanged++;
+                    } else {
+                        bindWeatherValues(updateStatement, weather, row);
+                        updateStatement.bindLong(UPSERT_COLUMNS.length + 1, stored.mIds[storedRow]);
+                        updateStatement.execute();
+                        counts.mUpdated++;
                     }
-                    db.setTransactionSuccessful();
-                } finally {
-                    db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
-                return returnCount;
-            default:
-                return super.bulkInsert(uri, values);
+                if (counts.mInserted + counts.mUpdated > writtenBefore) {
+                    changedLocationIds.add(locationId);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mStatementCache.release(db, SQL_INSERT_WEATHER, insertStatement);
+            mStatementCache.release(db, SQL_UPDATE_WEATHER, updateStatement);
+        }
+
+        for (Long locationId : changedLocationIds) {
+            mForecastCache.invalidateLocation(locationId);
+        }
+        if (counts.mInserted + counts.mUpdated > 0) {
+            getContext().getContentResolver().notifyChange(
+                    WeatherContract.WeatherEntry.CONTENT_URI, null);
+        }
+        return counts;
+    }
+
+    // Same as WeatherContract.normalizeDate, reusing the caller's Time.
+    private static long normalizeDate(Time time, long date) {
+        time.set(date);
+        int julianDay = Time.getJulianDay(date, time.gmtoff);
+        return time.setJulianDay(julianDay);
+    }
+
+    /**
+     * Starts the write transaction of an upsert.  Where available it's an immediate rather than
+     * an exclusive one: it still keeps other writers out, but doesn't ask for more than the
+     * write-ahead log needs while readers carry on.
+     */
+    private static void beginWeatherTransaction(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            beginTransactionNonExclusive(db);
+        } else {
+            db.beginTransaction();
         }
     }
 
+    @TargetApi(11)
+    private static void beginTransactionNonExclusive(SQLiteDatabase db) {
+        db.beginTransactionNonExclusive();
+    }
+
+    /**
+     * The rows stored for one location, in date order, with their _IDs alongside.
+     */
+    private static class StoredWeather {
+        final ForecastBatch mWeather;
+        final long[] mIds;
+
+        StoredWeather(int capacity) {
+            mWeather = new ForecastBatch(capacity);
+            mIds = new long[capacity];
+        }
+
+        /**
+         * @return the row stored for the date, or a negative number if there is none.
+         */
+        int indexOfDate(long date) {
+            int low = 0;
+            int high = mWeather.size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long middleDate = mWeather.getDate(middle);
+                if (middleDate < date) {
+                    low = middle + 1;
+                } else if (middleDate > date) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * @return the rows stored for the location between the first and the last date the batch
+     * has for it.
+     */
+    private StoredWeather getStoredWeather(SQLiteDatabase db, long locationId,
+                                           ForecastBatch weather) {
+        long startDate = Long.MAX_VALUE;
+        long endDate = Long.MIN_VALUE;
+        for (int row = 0; row < weather.size(); row++) {
+            if (weather.getLocationId(row) == locationId) {
+                startDate = Math.min(startDate, weather.getDate(row));
+                endDate = Math.max(endDate, weather.getDate(row));
+            }
+        }
+
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                STORED_WEATHER_PROJECTION,
+                sLocationIdWithDateRangeSelection,
+                new String[]{Long.toString(locationId), Long.toString(startDate), Long.toString(endDate)},
+                null,
+                null,
+                sStoredWeatherSortOrder);
+        try {
+            StoredWeather stored = new StoredWeather(cursor.getCount());
+            for (int row = 0; cursor.moveToNext(); row++) {
+                // Read the values with the type they were stored as, going through a String
+                // would round the REAL columns.
+                stored.mIds[row] = cursor.getLong(COL_STORED_ID);
+                stored.mWeather.addDay(cursor.getLong(COL_STORED_LOC_KEY),
+                        cursor.getLong(COL_STORED_DATE),
+                        cursor.getInt(COL_STORED_WEATHER_ID),
+                        cursor.getString(COL_STORED_SHORT_DESC),
+                        cursor.getDouble(COL_STORED_MIN_TEMP),
+                        cursor.getDouble(COL_STORED_MAX_TEMP),
+                        cursor.getDouble(COL_STORED_HUMIDITY),
+                        cursor.getDouble(COL_STORED_PRESSURE),
+                        cursor.getDouble(COL_STORED_WIND_SPEED),
+                        cursor.getDouble(COL_STORED_DEGREES));
+            }
+            return stored;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Inserts a complete weather row through the cached insert statement.
+     *
+     * @return the _ID of the new row
+     */
+    private long insertWeather(SQLiteDatabase db, ContentValues value) {
+        SQLiteStatement statement = mStatementCache.acquire(db, SQL_INSERT_WEATHER);
+        try {
+            bindWeatherValues(statement, value);
+            return statement.executeInsert();
+        } finally {
+            mStatementCache.release(db, SQL_INSERT_WEATHER, statement);
+        }
+    }
+
+    /**
+     * @return true if the values hold every weather column, and nothing else.
+     */
+    private static boolean isCompleteWeatherRow(ContentValues value) {
+        if (value.size() != UPSERT_COLUMNS.length) {
+            return false;
+        }
+        for (String column : UPSERT_COLUMNS) {
+            if (!value.containsKey(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void bindWeatherValues(SQLiteStatement statement, ContentValues value) {
+        statement.clearBindings();
+        for (int i = 0; i < UPSERT_COLUMNS.length; i++) {
+            DatabaseUtils.bindObjectToProgram(statement, i + 1, value.get(UPSERT_COLUMNS[i]));
+        }
+    }
+
+    // Binds a day of the batch in UPSERT_COLUMNS order.
+    static void bindWeatherValues(SQLiteStatement statement, ForecastBatch weather, int row) {
+        statement.bindLong(1, weather.getLocationId(row));
+        statement.bindLong(2, weather.getDate(row));
+        statement.bindString(3, weather.getDescription(row));
+        statement.bindLong(4, weather.getWeatherId(row));
+        statement.bindDouble(5, weather.getMinTemp(row));
+        statement.bindDouble(6, weather.getMaxTemp(row));
+        statement.bindDouble(7, weather.getHumidity(row));
+        statement.bindDouble(8, weather.getPressure(row));
+        statement.bindDouble(9, weather.getWindSpeed(row));
+        statement.bindDouble(10, weather.getDegrees(row));
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
     @Override
     @TargetApi(11)
     public void shutdown() {
+        mStatementCache.close();
         mOpenHelper.close();
         super.shutdown();
     }
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.MalformedJsonException;
+
+import com.example.android.sunshine.app.data.ForecastBatch;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+
+/**
+ * Pull-based parser for the OpenWeatherMap daily forecast response.  The forecast is read
+ * straight off the connection stream and every day is appended to a {@link ForecastBatch} as
+ * soon as its JSON object closes, so neither the raw response String nor a JSONObject tree is
+ * built, and the values of a day are never boxed.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+class ForecastJsonParser {
+
+    // These are the names of the JSON objects that need to be extracted.
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    // The values a day object has to provide, one bit each.  Location and date are added by
+    // the caller.
+    private static final int HAS_PRESSURE = 1;
+    private static final int HAS_HUMIDITY = 1 << 1;
+    private static final int HAS_WIND_SPEED = 1 << 2;
+    private static final int HAS_DEGREES = 1 << 3;
+    private static final int HAS_MAX_TEMP = 1 << 4;
+    private static final int HAS_MIN_TEMP = 1 << 5;
+    private static final int HAS_DESCRIPTION = 1 << 6;
+    private static final int HAS_WEATHER_ID = 1 << 7;
+    private static final int HAS_ALL_DAY_VALUES = (1 << 8) - 1;
+
+    /**
+     * Receives the city of the forecast.
+     */
+    interface Listener {
+        void onCity(String cityName, double lat, double lon);
+    }
+
+    // Values of the day being read.
+    private static class Day {
+        int mSeen;
+        double mPressure;
+        double mHumidity;
+        double mWindSpeed;
+        double mDegrees;
+        double mMaxTemp;
+        double mMinTemp;
+        String mDescription;
+        int mWeatherId;
+    }
+
+    private ForecastJsonParser() {
+    }
+
+    /**
+     * Parses a forecast response.
+     *
+     * @param in the response body, closed when parsing ends
+     * @param days receives the days in the order of the "list" array, 0 being today.  Their
+     *             location and date are left at 0 for the caller to fill in.
+     * @param listener receives the city
+     * @return the "cod" value of the response, or HTTP_OK when the response has none
+     * @throws IOException if the stream can't be read
+     * @throws JSONException if the response isn't a well formed forecast
+     */
+    static int parse(InputStream in, ForecastBatch days, Listener listener)
+            throws IOException, JSONException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            return readForecast(reader, days, listener);
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            // Bad content rather than a bad connection, report it the way org.json would.
+            throw new JSONException(e.getMessage());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static int readForecast(JsonReader reader, ForecastBatch days, Listener listener)
+            throws IOException, JSONException {
+        int code = HttpURLConnection.HTTP_OK;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MESSAGE_CODE.equals(name)) {
+                // OWM sends this one as a number or as a string, nextInt copes with both.
+                code = reader.nextInt();
+            } else if (OWM_CITY.equals(name)) {
+                readCity(reader, listener);
+            } else if (OWM_LIST.equals(name)) {
+                Day day = new Day();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readDay(reader, day, days.size());
+                    days.addDay(0, 0, day.mWeatherId, day.mDescription, day.mMinTemp,
+                            day.mMaxTemp, day.mHumidity, day.mPressure, day.mWindSpeed,
+                            day.mDegrees);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return code;
+    }
+
+    private static void readCity(JsonReader reader, Listener listener) throws IOException {
+        String cityName = null;
+        double lat = 0;
+        double lon = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        lat = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        lon = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        listener.onCity(cityName, lat, lon);
+    }
+
+    private static void readDay(JsonReader reader, Day day, int dayIndex)
+            throws IOException, JSONException {
+        day.mSeen = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                day.mPressure = reader.nextDouble();
+                day.mSeen |= HAS_PRESSURE;
+            } else if (OWM_HUMIDITY.equals(name)) {
+                // org.json's getInt truncates fractional values, do the same here.
+                day.mHumidity = (int) reader.nextDouble();
+                day.mSeen |= HAS_HUMIDITY;
+            } else if (OWM_WINDSPEED.equals(name)) {
+                day.mWindSpeed = reader.nextDouble();
+                day.mSeen |= HAS_WIND_SPEED;
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                day.mDegrees = reader.nextDouble();
+                day.mSeen |= HAS_DEGREES;
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                // Temperatures are in a child object called "temp".
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String tempName = reader.nextName();
+                    if (OWM_MAX.equals(tempName)) {
+                        day.mMaxTemp = reader.nextDouble();
+                        day.mSeen |= HAS_MAX_TEMP;
+                    } else if (OWM_MIN.equals(tempName)) {
+                        day.mMinTemp = reader.nextDouble();
+                        day.mSeen |= HAS_MIN_TEMP;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Description is in a child array called "weather", which is 1 element long.
+                // That element also contains a weather code.
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    readWeather(reader, day);
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (day.mSeen != HAS_ALL_DAY_VALUES) {
+            throw new JSONException("Incomplete forecast for day " + dayIndex);
+        }
+    }
+
+    private static void readWeather(JsonReader reader, Day day) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_DESCRIPTION.equals(name)) {
+                day.mDescription = reader.nextString();
+                day.mSeen |= HAS_DESCRIPTION;
+            } else if (OWM_WEATHER_ID.equals(name)) {
+                day.mWeatherId = reader.nextInt();
+                day.mSeen |= HAS_WEATHER_ID;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+}
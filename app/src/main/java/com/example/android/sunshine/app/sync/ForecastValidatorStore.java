@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Remembers, per location setting, the HTTP validators (ETag and Last-Modified) and a hash of
+ * the body of the last forecast that was stored, so the next sync can ask the server for the
+ * forecast only if it changed and skip storing it if the body is the same anyway.
+ */
+class ForecastValidatorStore {
+
+    private static final String PREFS_NAME = "forecast_validators";
+
+    private static final String KEY_ETAG = "etag:";
+    private static final String KEY_LAST_MODIFIED = "last_modified:";
+    private static final String KEY_BODY_HASH = "body_hash:";
+    private static final String KEY_JULIAN_DAY = "julian_day:";
+
+    /**
+     * Validators of one forecast response.  The julian day is the day the forecast was dated
+     * from: the same body received on another day maps to other dates and has to be stored.
+     */
+    static class Validators {
+        final String mETag;
+        final String mLastModified;
+        final String mBodyHash;
+        final int mJulianDay;
+
+        Validators(String eTag, String lastModified, String bodyHash, int julianDay) {
+            mETag = eTag;
+            mLastModified = lastModified;
+            mBodyHash = bodyHash;
+            mJulianDay = julianDay;
+        }
+
+        /**
+         * @return true if both responses carry the same forecast for the same day.
+         */
+        boolean hasSameContentAs(Validators other) {
+            return other != null && mBodyHash != null && mBodyHash.equals(other.mBodyHash)
+                    && mJulianDay == other.mJulianDay;
+        }
+    }
+
+    private final SharedPreferences mPrefs;
+
+    ForecastValidatorStore(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return the validators of the last forecast stored for the location on the given day,
+     * or null if there is none.
+     */
+    Validators get(String locationSetting, int julianDay) {
+        if (mPrefs.getInt(KEY_JULIAN_DAY + locationSetting, -1) != julianDay) {
+            return null;
+        }
+        return new Validators(
+                mPrefs.getString(KEY_ETAG + locationSetting, null),
+                mPrefs.getString(KEY_LAST_MODIFIED + locationSetting, null),
+                mPrefs.getString(KEY_BODY_HASH + locationSetting, null),
+                julianDay);
+    }
+
+    /**
+     * Sets the validators of the forecast just stored for the location.  This function should
+     * not be called from the UI thread because it uses commit to write to the shared preferences.
+     */
+    void put(String locationSetting, Validators validators) {
+        mPrefs.edit()
+                .putString(KEY_ETAG + locationSetting, validators.mETag)
+                .putString(KEY_LAST_MODIFIED + locationSetting, validators.mLastModified)
+                .putString(KEY_BODY_HASH + locationSetting, validators.mBodyHash)
+                .putInt(KEY_JULIAN_DAY + locationSetting, validators.mJulianDay)
+                .commit();
+    }
+
+    /**
+     * Forgets the validators of a location that is no longer stored, so the next forecast
+     * fetched for it is stored in full instead of being matched against rows that are gone.
+     */
+    void remove(String locationSetting) {
+        mPrefs.edit()
+                .remove(KEY_ETAG + locationSetting)
+                .remove(KEY_LAST_MODIFIED + locationSetting)
+                .remove(KEY_BODY_HASH + locationSetting)
+                .remove(KEY_JULIAN_DAY + locationSetting)
+                .commit();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers, per location setting, when a sync last found it to be the preferred location.
+ * Only locations used within {@link #RECENT_MILLIS} are kept synced; the others are dropped
+ * from the database, so switching back to one soon after still shows its forecast right away.
+ */
+class RecentLocationStore {
+
+    static final long RECENT_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    private static final String PREFS_NAME = "recent_locations";
+
+    private static final String KEY_LAST_USED = "last_used:";
+
+    private final SharedPreferences mPrefs;
+
+    RecentLocationStore(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return true if the location was the preferred one within {@link #RECENT_MILLIS} of now.
+     */
+    boolean isRecent(String locationSetting, long nowMillis) {
+        long lastUsed = mPrefs.getLong(KEY_LAST_USED + locationSetting, 0);
+        return nowMillis - lastUsed < RECENT_MILLIS;
+    }
+
+    /**
+     * Records that the location is the preferred one now.  This function should not be called
+     * from the UI thread because it uses commit to write to the shared preferences.
+     */
+    void markUsed(String locationSetting, long nowMillis) {
+        mPrefs.edit().putLong(KEY_LAST_USED + locationSetting, nowMillis).commit();
+    }
+
+    /**
+     * Forgets the location, once it was dropped from the database.
+     */
+    void remove(String locationSetting) {
+        mPrefs.edit().remove(KEY_LAST_USED + locationSetting).commit();
+    }
+}
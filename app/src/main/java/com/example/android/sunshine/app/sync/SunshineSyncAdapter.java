@@ -3,6 +3,7 @@ package com.example.android.sunshine.app.sync;
 import android.accounts.Account;
 import android.accounts.AccountManager;
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
@@ -22,6 +23,7 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
@@ -33,14 +35,12 @@ import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WearWeatherService;
+import com.example.android.sunshine.app.data.ForecastBatch;
 import com.example.android.sunshine.app.data.WeatherContract;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -54,12 +54,18 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.UUID;
-import java.util.Vector;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
-    public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
+    public static final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
     // Interval at which to sync with the weather, in seconds.
@@ -69,11 +75,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
-    private static final String WEATHER_INFO_PATH = "/weather-info";
-    private static final String KEY_UUID = "uuid";
-    private static final String KEY_HIGH = "high";
-    private static final String KEY_LOW = "low";
-    private static final String KEY_WEATHER_ID = "weatherId";
+    public static final String WEATHER_INFO_PATH = "/weather-info";
+    // Tells a watch that asked for the weather when the phone last synced it.
+    private static final String WEATHER_SYNCED_PATH = "/weather-synced";
 
     private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
@@ -88,6 +92,16 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     private static final int INDEX_MIN_TEMP = 2;
     private static final int INDEX_SHORT_DESC = 3;
 
+    // The same columns and the date, for the days sent to the watch face.
+    private static final String[] WEAR_WEATHER_PROJECTION = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_DATE
+    };
+    private static final int INDEX_DATE = 4;
+
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
     public @interface LocationStatus {}
@@ -98,24 +112,197 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
-    private GoogleApiClient mGoogleApiClient;
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String BODY_HASH_ALGORITHM = "SHA-1";
+
+    // How many locations are downloaded at the same time when syncing several of them.
+    private static final int MAX_PARALLEL_FETCHES = 4;
+
+    private final ForecastValidatorStore mValidatorStore;
+    private final RecentLocationStore mRecentLocationStore;
 
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
-
-        if (mGoogleApiClient == null) {
-            mGoogleApiClient = new GoogleApiClient.Builder(context)
-//                    .addConnectionCallbacks(this)
-//                    .addOnConnectionFailedListener(this)
-                    .addApi(Wearable.API)
-                    .build();
-        }
+        mValidatorStore = new ForecastValidatorStore(context);
+        mRecentLocationStore = new RecentLocationStore(context);
     }
 
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "ndp6>>Starting sync");
-        String locationQuery = Utility.getPreferredLocation(getContext());
+        int settingsLookups = SettingsSnapshot.getLookupCount();
+        int preferenceReads = SettingsSnapshot.getPreferenceReadCount();
+        String preferredLocation = Utility.getPreferredLocation(getContext());
+        List<String> locations = getSyncLocations(preferredLocation);
+
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, which means that we need to know the GMT offset to translate this data
+        // properly.
+
+        // Since this data is also sent in-order and the first day is always the
+        // current day, we're going to take advantage of that to get a nice
+        // normalized UTC date for all of our weather.
+        Time dayTime = new Time();
+        dayTime.setToNow();
+
+        // we start at the day returned by local time. Otherwise this is a mess.
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+
+        long batchStart = SystemClock.elapsedRealtime();
+        List<LocationForecast> forecasts = fetchForecasts(locations, julianStartDay);
+        long fetchMillis = SystemClock.elapsedRealtime() - batchStart;
+
+        // Every location that changed goes into a single bulkInsert, so the provider writes
+        // them all in one transaction and notifies its observers once.
+        ForecastBatch weather = new ForecastBatch();
+        LocationForecast preferredForecast = null;
+        for (LocationForecast forecast : forecasts) {
+            Log.d(LOG_TAG, "Fetched " + forecast.mLocationSetting + " in "
+                    + forecast.mFetchMillis + "ms, status " + forecast.mStatus + ", "
+                    + (forecast.mWeather != null ? forecast.mWeather.size() : 0)
+                    + " rows to store");
+            if (forecast.mLocationSetting.equals(preferredLocation)) {
+                preferredForecast = forecast;
+            }
+            if (forecast.mWeather != null) {
+                weather.addAll(forecast.mWeather);
+            }
+        }
+
+        long commitStart = SystemClock.elapsedRealtime();
+        storeWeatherData(weather, julianStartDay,
+                preferredForecast != null ? preferredForecast.mWeather : null);
+        for (LocationForecast forecast : forecasts) {
+            if (forecast.mValidators != null) {
+                mValidatorStore.put(forecast.mLocationSetting, forecast.mValidators);
+            }
+        }
+        if (preferredForecast != null && preferredForecast.mStatus != LOCATION_STATUS_UNKNOWN) {
+            setLocationStatus(getContext(), preferredForecast.mStatus);
+        }
+        if (preferredForecast != null && preferredForecast.mStatus == LOCATION_STATUS_OK) {
+            // Not modified counts too: what's stored is what the server has.
+            setLastSyncTime(getContext(), System.currentTimeMillis());
+            // Only goes out if the forecast changed.  A watch that asked for the weather is
+            // told it's current either way.
+            sendWeatherToWearable(getContext());
+            WearWeatherService.answerPendingRequests(getContext());
+        }
+        long commitMillis = SystemClock.elapsedRealtime() - commitStart;
+
+        Log.d(LOG_TAG, "ndp6>>Synced " + locations.size() + " locations in "
+                + (fetchMillis + commitMillis) + "ms (fetch " + fetchMillis + "ms, commit "
+                + commitMillis + "ms, " + weather.size() + " rows)");
+        if (SettingsSnapshot.isCounting()) {
+            // Each lookup read the preferences before they were kept in a snapshot.
+            Log.d(LOG_TAG, "Settings looked up "
+                    + (SettingsSnapshot.getLookupCount() - settingsLookups)
+                    + " times, preferences read "
+                    + (SettingsSnapshot.getPreferenceReadCount() - preferenceReads) + " times");
+        }
+    }
+
+    /**
+     * @return the location settings to sync: the preferred one first, then the other locations
+     * saved in the database that were the preferred one within the last week.  Every other
+     * location is deleted, with its forecast and what is remembered about it, so locations
+     * the user moved away from aren't fetched forever.
+     */
+    private List<String> getSyncLocations(String preferredLocation) {
+        long now = System.currentTimeMillis();
+        mRecentLocationStore.markUsed(preferredLocation, now);
+
+        List<String> locations = new ArrayList<String>();
+        locations.add(preferredLocation);
+
+        ContentResolver resolver = getContext().getContentResolver();
+        Cursor cursor = resolver.query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                null, null, null);
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                String location = cursor.getString(1);
+                if (locations.contains(location)) {
+                    continue;
+                }
+                if (mRecentLocationStore.isRecent(location, now)) {
+                    locations.add(location);
+                } else {
+                    deleteLocation(resolver, cursor.getLong(0), location);
+                }
+            }
+            cursor.close();
+        }
+        return locations;
+    }
+
+    private void deleteLocation(ContentResolver resolver, long locationId, String location) {
+        String[] selectionArgs = {Long.toString(locationId)};
+        // The forecast first, its rows reference the location.
+        int weatherRows = resolver.delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ?", selectionArgs);
+        resolver.delete(WeatherContract.LocationEntry.CONTENT_URI,
+                WeatherContract.LocationEntry._ID + " = ?", selectionArgs);
+        mValidatorStore.remove(location);
+        mRecentLocationStore.remove(location);
+        Log.d(LOG_TAG, "Deleted " + location + " and " + weatherRows
+                + " weather rows, not used for a week");
+    }
+
+    /**
+     * Fetches the forecasts of the given locations, at most {@link #MAX_PARALLEL_FETCHES} at a
+     * time.  Each location is downloaded and parsed on a worker thread; the results come back
+     * in the order of the locations.
+     */
+    private List<LocationForecast> fetchForecasts(List<String> locations, final int julianStartDay) {
+        List<LocationForecast> forecasts = new ArrayList<LocationForecast>(locations.size());
+        if (locations.size() == 1) {
+            // No point in spinning up threads for a single location.
+            forecasts.add(fetchForecast(locations.get(0), julianStartDay));
+            return forecasts;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(MAX_PARALLEL_FETCHES, locations.size()));
+        try {
+            List<Future<LocationForecast>> futures =
+                    new ArrayList<Future<LocationForecast>>(locations.size());
+            for (final String location : locations) {
+                futures.add(executor.submit(new Callable<LocationForecast>() {
+                    @Override
+                    public LocationForecast call() {
+                        return fetchForecast(location, julianStartDay);
+                    }
+                }));
+            }
+            for (Future<LocationForecast> future : futures) {
+                try {
+                    forecasts.add(future.get());
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Error fetching a forecast", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            // The sync was cancelled, store what we already have.
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        return forecasts;
+    }
+
+    /**
+     * Downloads and parses the forecast of one location.  Safe to call from any thread: the
+     * only thing it writes is the location row, through the content provider.
+     */
+    private LocationForecast fetchForecast(String locationQuery, int julianStartDay) {
+        LocationForecast forecast = new LocationForecast(locationQuery);
+        long start = SystemClock.elapsedRealtime();
 
         // These two need to be declared outside the try/catch
         // so that they can be closed in the finally block.
@@ -154,41 +341,88 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             // Create the request to OpenWeatherMap, and open the connection
             urlConnection = (HttpURLConnection) url.openConnection();
             urlConnection.setRequestMethod("GET");
+
+            // If we still hold the forecast we stored last time for this day, only ask for
+            // the forecast in case it changed since.
+            ForecastValidatorStore.Validators storedValidators =
+                    mValidatorStore.get(locationQuery, julianStartDay);
+            if (storedValidators != null && hasStoredForecast(locationQuery)) {
+                if (storedValidators.mETag != null) {
+                    urlConnection.setRequestProperty(HEADER_IF_NONE_MATCH, storedValidators.mETag);
+                }
+                if (storedValidators.mLastModified != null) {
+                    urlConnection.setRequestProperty(HEADER_IF_MODIFIED_SINCE,
+                            storedValidators.mLastModified);
+                }
+            } else {
+                storedValidators = null;
+            }
             urlConnection.connect();
 
-            // Read the input stream into a String
+            if (storedValidators != null
+                    && urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // Nothing changed upstream, what we have is still the latest forecast.
+                Log.d(LOG_TAG, "Forecast not modified for " + locationQuery);
+                forecast.mStatus = LOCATION_STATUS_OK;
+                return forecast;
+            }
+
             InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
             if (inputStream == null) {
                 // Nothing to do.
-                return;
+                return forecast;
             }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                // Parse the forecast straight off the connection, one day at a time, instead
+                // of holding the whole response and its JSONObject tree in memory.
+                getWeatherDataFromStream(inputStream, forecast, julianStartDay);
+            } else {
+                // Read the input stream into a String
+                StringBuffer buffer = new StringBuffer();
+                reader = new BufferedReader(new InputStreamReader(inputStream));
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
+                    // But it does make debugging a *lot* easier if you print out the completed
+                    // buffer for debugging.
+                    buffer.append(line + "\n");
+                }
+
+                if (buffer.length() == 0) {
+                    // Stream was empty.  No point in parsing.
+                    forecast.mStatus = LOCATION_STATUS_SERVER_DOWN;
+                    return forecast;
+                }
+                forecastJsonStr = buffer.toString();
+                getWeatherDataFromJson(forecastJsonStr, forecast, julianStartDay);
+            }
+            if (forecast.mWeather == null) {
+                // The response reported an error, the status says which.
+                return forecast;
             }
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+            forecast.mStatus = LOCATION_STATUS_OK;
+            forecast.mValidators = new ForecastValidatorStore.Validators(
+                    urlConnection.getHeaderField(HEADER_ETAG),
+                    urlConnection.getHeaderField(HEADER_LAST_MODIFIED),
+                    hashWeather(forecast.mWeather),
+                    julianStartDay);
+            if (forecast.mValidators.hasSameContentAs(storedValidators)) {
+                // Same forecast as last time, don't rewrite it or wake up anybody about it.
+                Log.d(LOG_TAG, "Forecast unchanged for " + locationQuery);
+                forecast.mWeather = null;
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
             // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+            forecast.mStatus = LOCATION_STATUS_SERVER_DOWN;
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            forecast.mStatus = LOCATION_STATUS_SERVER_INVALID;
         } finally {
             if (urlConnection != null) {
                 urlConnection.disconnect();
@@ -200,8 +434,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     Log.e(LOG_TAG, "Error closing stream", e);
                 }
             }
+            forecast.mFetchMillis = SystemClock.elapsedRealtime() - start;
         }
-        return;
+        return forecast;
     }
 
     /**
@@ -210,9 +445,13 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
      *
      * Fortunately parsing is easy:  constructor takes the JSON string and converts it
      * into an Object hierarchy for us.
+     *
+     * The days end up in the forecast's weather batch, or its status is set if the response
+     * reported an error.
      */
     private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
+                                        LocationForecast forecast,
+                                        int julianStartDay)
             throws JSONException {
         // Now we have a String representing the complete forecast in JSON Format.
         // Fortunately parsing is easy:  constructor takes the JSON string and converts it
@@ -248,169 +487,403 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
         final String OWM_MESSAGE_CODE = "cod";
 
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        // do we have an error?
+        if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
+            forecast.mStatus = getLocationStatusForMessageCode(
+                    forecastJson.getInt(OWM_MESSAGE_CODE));
+            if (forecast.mStatus != LOCATION_STATUS_OK) {
+                return;
             }
+        }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
 
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        String cityName = cityJson.getString(OWM_CITY_NAME);
 
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
+        double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
 
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
+        long locationId = addLocation(forecast.mLocationSetting, cityName, cityLatitude, cityLongitude);
 
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
+        // Insert the new weather information into the database
+        ForecastBatch weather = new ForecastBatch(weatherArray.length());
 
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
+        // now we work exclusively in UTC
+        Time dayTime = new Time();
 
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
+        for(int i = 0; i < weatherArray.length(); i++) {
+            // These are the values that will be collected.
+            long dateTime;
+            double pressure;
+            double humidity;
+            double windSpeed;
+            double windDirection;
 
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                if (i == 0) {
-                    sendWeatherInfoToWearable(high, low, weatherId);
-                }
+            double high;
+            double low;
 
-                cVVector.add(weatherValues);
-            }
+            String description;
+            int weatherId;
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
 
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
+            // Cheating to convert this to UTC time, which is what we want anyhow
+            dateTime = dayTime.setJulianDay(julianStartDay+i);
 
-                updateWidgets();
-                notifyWeather();
-            }
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+            pressure = dayForecast.getDouble(OWM_PRESSURE);
+            humidity = dayForecast.getInt(OWM_HUMIDITY);
+            windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
+            windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            // Description is in a child array called "weather", which is 1 element long.
+            // That element also contains a weather code.
+            JSONObject weatherObject =
+                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            description = weatherObject.getString(OWM_DESCRIPTION);
+            weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            high = temperatureObject.getDouble(OWM_MAX);
+            low = temperatureObject.getDouble(OWM_MIN);
+
+            weather.addDay(locationId, dateTime, weatherId, description, low, high,
+                    humidity, pressure, windSpeed, windDirection);
         }
+
+        forecast.mWeather = weather;
     }
 
-    public void sendWeatherInfoToWearable(double high, double low, int weatherId) {
-        Log.d(LOG_TAG, "ndp6>>Sending Weather data");
+    /**
+     * Streaming counterpart of {@link #getWeatherDataFromJson}.  The forecast is pulled off the
+     * stream by {@link ForecastJsonParser} and every day becomes a row of the batch as soon as
+     * it is read.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void getWeatherDataFromStream(InputStream inputStream,
+                                          LocationForecast forecast,
+                                          int julianStartDay)
+            throws IOException, JSONException {
+        ForecastBatch weather = new ForecastBatch();
+        CityCollector collector = new CityCollector();
+        int messageCode = ForecastJsonParser.parse(inputStream, weather, collector);
+        forecast.mStatus = getLocationStatusForMessageCode(messageCode);
+        if (forecast.mStatus != LOCATION_STATUS_OK) {
+            return;
+        }
+        if (collector.mCityName == null) {
+            throw new JSONException("No value for city");
+        }
+
+        long locationId = addLocation(forecast.mLocationSetting, collector.mCityName,
+                collector.mCityLatitude, collector.mCityLongitude);
+        // now we work exclusively in UTC
+        Time dayTime = new Time();
+        for (int i = 0; i < weather.size(); i++) {
+            weather.setLocationId(i, locationId);
+            // Cheating to convert this to UTC time, which is what we want anyhow
+            weather.setDate(i, dayTime.setJulianDay(julianStartDay + i));
+        }
 
-        if (mGoogleApiClient == null) {
+        forecast.mWeather = weather;
+    }
+
+    /**
+     * @return the location status matching the "cod" value of a forecast response.
+     */
+    @LocationStatus
+    private static int getLocationStatusForMessageCode(int messageCode) {
+        switch (messageCode) {
+            case HttpURLConnection.HTTP_OK:
+                return LOCATION_STATUS_OK;
+            case HttpURLConnection.HTTP_NOT_FOUND:
+                return LOCATION_STATUS_INVALID;
+            default:
+                return LOCATION_STATUS_SERVER_DOWN;
+        }
+    }
+
+    /**
+     * Writes the parsed forecasts of all locations to the database and drops the days that are
+     * now in the past.  The widgets, the notification and the wearable only show the preferred
+     * location, so they are only told about new data when its forecast changed.
+     *
+     * @param weather the days of every location whose forecast changed
+     * @param preferredWeather the days of the preferred location, or null if it didn't change
+     */
+    private void storeWeatherData(ForecastBatch weather, int julianStartDay,
+                                  ForecastBatch preferredWeather) {
+        // add to database
+        int rowsWritten = 0;
+        if ( weather.size() > 0 ) {
+            rowsWritten = upsertWeather(weather);
+
+            // delete old data so we don't build up an endless history
+            Time dayTime = new Time();
+            deleteWeatherOnOrBefore(Long.toString(dayTime.setJulianDay(julianStartDay-1)));
+        }
+
+        // If the provider found every row already stored as is, there is nothing new to show.
+        // The watch is sent the forecast, if it changed, once the sync is done: see onPerformSync.
+        if ( rowsWritten > 0 && preferredWeather != null && preferredWeather.size() > 0 ) {
+            updateWidgets();
+            notifyWeather();
+        }
+    }
+
+    /**
+     * Hands the days to the provider, which only writes the ones that are new or changed.
+     *
+     * @return the number of rows inserted or updated.
+     */
+    private int upsertWeather(ForecastBatch weather) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return getContext().getContentResolver().bulkInsert(
+                    WeatherContract.WeatherEntry.CONTENT_URI, weather.toContentValues());
+        }
+        Bundle extras = new Bundle();
+        extras.putParcelable(WeatherContract.WeatherEntry.EXTRA_WEATHER_BATCH, weather);
+        Bundle counts = callUpsert(extras);
+        int inserted = counts.getInt(WeatherContract.WeatherEntry.RESULT_INSERTED);
+        int updated = counts.getInt(WeatherContract.WeatherEntry.RESULT_UPDATED);
+        Log.d(LOG_TAG, "Stored weather: " + inserted + " inserted, " + updated + " updated, "
+                + counts.getInt(WeatherContract.WeatherEntry.RESULT_UNCHANGED) + " unchanged");
+        return inserted + updated;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private Bundle callUpsert(Bundle extras) {
+        return getContext().getContentResolver().call(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.METHOD_UPSERT_BATCH, null, extras);
+    }
+
+    private void deleteWeatherOnOrBefore(String date) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?", new String[] {date});
             return;
         }
+        callDeleteOnOrBefore(date);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void callDeleteOnOrBefore(String date) {
+        getContext().getContentResolver().call(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.METHOD_DELETE_ON_OR_BEFORE, date, null);
+    }
+
+    /**
+     * Outcome of fetching the forecast of one location.
+     */
+    private static class LocationForecast {
+        final String mLocationSetting;
+
+        @LocationStatus
+        int mStatus = LOCATION_STATUS_UNKNOWN;
 
-        mGoogleApiClient.connect();
+        // The days to store, null if the fetch failed or the forecast didn't change.
+        ForecastBatch mWeather;
 
-        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(WEATHER_INFO_PATH);
+        // What to remember about the response once its rows are stored.
+        ForecastValidatorStore.Validators mValidators;
 
-        putDataMapRequest.getDataMap().putString(KEY_UUID, UUID.randomUUID().toString());
-        putDataMapRequest.getDataMap().putString(KEY_HIGH, Utility.formatTemperature(getContext(), high));
-        putDataMapRequest.getDataMap().putString(KEY_LOW, Utility.formatTemperature(getContext(), low));
-        putDataMapRequest.getDataMap().putInt(KEY_WEATHER_ID, weatherId);
+        long mFetchMillis;
 
-        PutDataRequest request = putDataMapRequest.asPutDataRequest();
+        LocationForecast(String locationSetting) {
+            mLocationSetting = locationSetting;
+        }
+    }
 
-        Log.d(LOG_TAG, "High:" + high + ", Low:" + low + ", Condition ID: " + weatherId);
+    /**
+     * Keeps the city {@link ForecastJsonParser} reads.
+     */
+    private static class CityCollector implements ForecastJsonParser.Listener {
+        String mCityName;
+        double mCityLatitude;
+        double mCityLongitude;
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            mCityName = cityName;
+            mCityLatitude = lat;
+            mCityLongitude = lon;
+        }
+    }
 
-        Wearable.DataApi.putDataItem(mGoogleApiClient, request)
-                .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
+    /**
+     * Sends the stored forecast of the preferred location to the watch face as a
+     * {@link WearWeatherPayload}.  Nothing is sent if the watch already got the same bytes: the
+     * DataItem wouldn't change, and there's no reason to wake the watch up over Bluetooth for it.
+     * Reads the database, so not on the UI thread.
+     *
+     * @return false if there's no forecast for today to send.
+     */
+    public static boolean sendWeatherToWearable(Context context) {
+        byte[] payload = loadWearPayload(context);
+        if (payload == null) {
+            return false;
+        }
+        final String payloadHash = hash(payload);
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        final String lastHashKey = context.getString(R.string.pref_last_wear_payload_hash);
+        if (payloadHash != null && payloadHash.equals(prefs.getString(lastHashKey, null))) {
+            Log.d(LOG_TAG, "ndp6>>Watch already has this forecast, not sending it");
+            return true;
+        }
+        Log.d(LOG_TAG, "ndp6>>Sending Weather data, " + payload.length + " bytes");
+
+        PutDataRequest request = PutDataRequest.create(WEATHER_INFO_PATH);
+        request.setData(payload);
+
+        // The connection queues it until the client is connected and retries failed puts, so
+        // this doesn't race the connection.  The latency from here to the put is logged there.
+        WearableConnection.get(context).putDataItem(request,
+                new WearableConnection.Callback() {
                     @Override
-                    public void onResult(DataApi.DataItemResult dataItemResult) {
-                        if (!dataItemResult.getStatus().isSuccess()) {
-                            Log.d(LOG_TAG, "ndp6>>Failed to send weather data");
-                        } else {
-                            Log.d(LOG_TAG, "ndp6>>Successfully sent weather data");
-                        }
+                    public void onDataItemPut(PutDataRequest request) {
+                        Log.d(LOG_TAG, "ndp6>>Successfully sent weather data");
+                        // Only remember what was delivered, so a failed send is retried.
+                        SharedPreferences.Editor editor = prefs.edit();
+                        editor.putString(lastHashKey, payloadHash);
+                        editor.apply();
                     }
                 });
+        return true;
+    }
+
+    /**
+     * Tells the watch when the forecast was last synced, so it knows the forecast it has is
+     * current without being sent the same forecast again.
+     */
+    public static void sendSyncTimeToWearable(Context context, String nodeId) {
+        long syncMillis = getLastSyncTime(context);
+        Log.d(LOG_TAG, "ndp6>>Telling " + nodeId + " the forecast was synced at " + syncMillis);
+        WearableConnection.get(context).sendMessage(nodeId, WEATHER_SYNCED_PATH,
+                WearWeatherPayload.encodeSyncTime(syncMillis));
+    }
+
+    /**
+     * Encodes the stored forecast of the preferred location the way the sync sends it to the
+     * watch face, so a request from the watch can be answered without going to the network.
+     *
+     * @return the payload, or null if the database has no forecast starting today.
+     */
+    public static byte[] loadWearPayload(Context context) {
+        Time dayTime = new Time();
+        dayTime.setToNow();
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+        long today = dayTime.setJulianDay(julianStartDay);
+
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                Utility.getPreferredLocation(context), today);
+        Cursor cursor = context.getContentResolver().query(weatherUri, WEAR_WEATHER_PROJECTION,
+                null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return null;
+        }
+        ForecastBatch weather = new ForecastBatch(WearWeatherPayload.MAX_DAYS);
+        try {
+            // The payload has no gaps, so stop at the first missing day.
+            while (weather.size() < WearWeatherPayload.MAX_DAYS && cursor.moveToNext()) {
+                long date = cursor.getLong(INDEX_DATE);
+                if (date != dayTime.setJulianDay(julianStartDay + weather.size())) {
+                    break;
+                }
+                weather.addDay(0, date, cursor.getInt(INDEX_WEATHER_ID),
+                        cursor.getString(INDEX_SHORT_DESC), cursor.getDouble(INDEX_MIN_TEMP),
+                        cursor.getDouble(INDEX_MAX_TEMP), 0, 0, 0, 0);
+            }
+        } finally {
+            cursor.close();
+        }
+        if (weather.size() == 0) {
+            return null;
+        }
+        return WearWeatherPayload.encode(weather, julianStartDay, Utility.isMetric(context));
+    }
+
+    /**
+     * @return true if the database holds a forecast for the location starting today.
+     */
+    private boolean hasStoredForecast(String locationSetting) {
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cursor = getContext().getContentResolver().query(weatherUri,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_DATE}, null, null, null);
+        if (cursor == null) {
+            return false;
+        }
+        boolean hasForecast = cursor.moveToFirst();
+        cursor.close();
+        return hasForecast;
+    }
+
+    /**
+     * Hashes the forecast carried by a response.  The raw body isn't hashed because OWM puts
+     * per-request details in it (e.g. "message" is the server's computation time), which would
+     * make every body look new.
+     *
+     * @return the hash as a hex string, or null if it can't be computed.
+     */
+    private String hashWeather(ForecastBatch weather) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(BODY_HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(LOG_TAG, "Can't hash forecast responses", e);
+            return null;
+        }
+        // Every column of every day, in a fixed order.
+        byte[] buffer = new byte[8];
+        for (int i = 0; i < weather.size(); i++) {
+            updateDigest(digest, buffer, weather.getLocationId(i));
+            updateDigest(digest, buffer, weather.getDate(i));
+            updateDigest(digest, buffer, weather.getWeatherId(i));
+            digest.update(weather.getDescription(i).getBytes());
+            digest.update((byte) 0);
+            updateDigest(digest, buffer, Double.doubleToLongBits(weather.getMaxTemp(i)));
+            updateDigest(digest, buffer, Double.doubleToLongBits(weather.getMinTemp(i)));
+            updateDigest(digest, buffer, Double.doubleToLongBits(weather.getHumidity(i)));
+            updateDigest(digest, buffer, Double.doubleToLongBits(weather.getPressure(i)));
+            updateDigest(digest, buffer, Double.doubleToLongBits(weather.getWindSpeed(i)));
+            updateDigest(digest, buffer, Double.doubleToLongBits(weather.getDegrees(i)));
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return the hash of the bytes as a hex string, or null if it can't be computed.
+     */
+    private static String hash(byte[] bytes) {
+        try {
+            return toHex(MessageDigest.getInstance(BODY_HASH_ALGORITHM).digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(LOG_TAG, "Can't hash the wear payload", e);
+            return null;
+        }
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void updateDigest(MessageDigest digest, byte[] buffer, long value) {
+        for (int i = 0; i < 8; i++) {
+            buffer[i] = (byte) (value >>> (56 - 8 * i));
+        }
+        digest.update(buffer, 0, 8);
     }
 
     private void updateWidgets() {
@@ -646,6 +1119,21 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         getSyncAccount(context);
     }
 
+    /**
+     * @return when the forecast of the preferred location was last fetched, 0 if never.
+     */
+    public static long getLastSyncTime(Context c) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
+        return sp.getLong(c.getString(R.string.pref_last_sync_time), 0);
+    }
+
+    static private void setLastSyncTime(Context c, long syncTime) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
+        SharedPreferences.Editor spe = sp.edit();
+        spe.putLong(c.getString(R.string.pref_last_sync_time), syncTime);
+        spe.commit();
+    }
+
     /**
      * Sets the location status into shared preference.  This function should not be called from
      * the UI thread because it uses commit to write to the shared preferences.
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import com.example.android.sunshine.app.data.ForecastBatch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the forecast sent to the watch face as the data of the "/weather-info" DataItem.
+ * The watch decodes it with its own copy of the format (com.ijzepeda.wear.WeatherPayload), so
+ * the two have to change together, and VERSION has to go up when the layout does.
+ *
+ * Layout, big-endian:
+ *   byte    VERSION
+ *   byte    flags, FLAG_METRIC if the user wants Celsius
+ *   int     julian day of the first day
+ *   byte    number of days, the following days are consecutive
+ *   per day:
+ *     short weather id
+ *     short high, in tenths of a degree Celsius
+ *     short low, in tenths of a degree Celsius
+ *
+ * The temperatures are raw so the watch formats them itself, and the whole two weeks the sync
+ * fetches fit in under 100 bytes.  The watch keeps every day, so it can move on to the next
+ * one at midnight without waiting for the phone.  The same forecast always encodes to the
+ * same bytes, which is what lets the sync adapter skip sending it again.
+ *
+ * The time of the last sync isn't part of it, or every sync would give new bytes and wake the
+ * watch.  The watch asks for it when its forecast gets old, and the answer is a
+ * "/weather-synced" message holding just that time, see {@link #encodeSyncTime}.
+ */
+final class WearWeatherPayload {
+
+    static final int VERSION = 1;
+
+    static final int FLAG_METRIC = 1;
+
+    // Days sent to the watch, today included.  The watch's ring holds this many and more.
+    static final int MAX_DAYS = 14;
+
+    // Header bytes before the first day, and bytes per day.
+    static final int HEADER_SIZE = 7;
+    static final int DAY_SIZE = 6;
+
+    // Bytes of the "/weather-synced" message.
+    static final int SYNC_TIME_SIZE = 8;
+
+    private WearWeatherPayload() {
+    }
+
+    /**
+     * @param weather the days of the location to show, today first
+     * @param firstJulianDay the julian day of the first row
+     */
+    static byte[] encode(ForecastBatch weather, int firstJulianDay, boolean metric) {
+        int dayCount = Math.min(weather.size(), MAX_DAYS);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + dayCount * DAY_SIZE);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            out.writeByte(metric ? FLAG_METRIC : 0);
+            out.writeInt(firstJulianDay);
+            out.writeByte(dayCount);
+            for (int row = 0; row < dayCount; row++) {
+                out.writeShort(weather.getWeatherId(row));
+                out.writeShort(toTenths(weather.getMaxTemp(row)));
+                out.writeShort(toTenths(weather.getMinTemp(row)));
+            }
+            out.close();
+        } catch (IOException e) {
+            // Can't happen writing to memory.
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the data of the "/weather-synced" message: the time of the last sync, in
+     * milliseconds since the epoch, as a big-endian long.
+     */
+    static byte[] encodeSyncTime(long syncMillis) {
+        return ByteBuffer.allocate(SYNC_TIME_SIZE).putLong(syncMillis).array();
+    }
+
+    private static int toTenths(double temperature) {
+        return (int) Math.round(temperature * 10);
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The one GoogleApiClient for the Wearable API in this process, shared by everything that sends
+ * data items to the watch.  It connects on first use and stays connected.
+ *
+ * Data items are queued until the client is connected, then put all at once.  A newer item for
+ * a path replaces the one still queued for it, since the watch only keeps the last one anyway.
+ * Failed connections and puts are retried with exponential backoff, except when the Wearable API
+ * can't be had at all, as on a device without Wear; then the queue is dropped.
+ *
+ * Messages to a node are queued the same way, a newer one for the same node and path replacing
+ * the one still queued.  They aren't retried once sent: they only answer the watch, which asks
+ * again if no answer arrives.
+ *
+ * The watch face has its own copy of this class; the two should change together, except that
+ * only the phone sends messages.
+ *
+ * Everything runs on the main thread, where the client delivers its callbacks, so none of the
+ * state needs locking.  {@link #putDataItem} can be called from any thread.
+ */
+public class WearableConnection implements GoogleApiClient.ConnectionCallbacks,
+        GoogleApiClient.OnConnectionFailedListener {
+
+    private static final String LOG_TAG = WearableConnection.class.getSimpleName();
+
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+
+    private static WearableConnection sInstance;
+
+    /**
+     * Called on the main thread once a data item was put.  Not called for an item that was
+     * replaced by a newer one before it went out.
+     */
+    public interface Callback {
+        void onDataItemPut(PutDataRequest request);
+    }
+
+    private static class PendingItem {
+        final PutDataRequest mRequest;
+        final Callback mCallback;
+        // When it was handed over, in elapsedRealtime.
+        final long mQueuedMillis;
+
+        PendingItem(PutDataRequest request, Callback callback, long queuedMillis) {
+            mRequest = request;
+            mCallback = callback;
+            mQueuedMillis = queuedMillis;
+        }
+    }
+
+    private static class PendingMessage {
+        final String mNodeId;
+        final String mPath;
+        final byte[] mData;
+
+        PendingMessage(String nodeId, String path, byte[] data) {
+            mNodeId = nodeId;
+            mPath = path;
+            mData = data;
+        }
+    }
+
+    private final GoogleApiClient mGoogleApiClient;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // Items waiting for the client, by path, oldest first.
+    private final LinkedHashMap<String, PendingItem> mPending =
+            new LinkedHashMap<String, PendingItem>();
+
+    // Messages waiting for the client, by node and path.
+    private final LinkedHashMap<String, PendingMessage> mPendingMessages =
+            new LinkedHashMap<String, PendingMessage>();
+
+    private long mBackoffMillis = MIN_BACKOFF_MILLIS;
+    private boolean mRetryScheduled;
+
+    // Time from handing an item over to it being put, over every item put.
+    private int mPutCount;
+    private int mFailedPutCount;
+    private long mTotalLatencyMillis;
+    private long mMaxLatencyMillis;
+
+    private final Runnable mRetry = new Runnable() {
+        @Override
+        public void run() {
+            mRetryScheduled = false;
+            // flush() only connects when something is queued; a failed connection is retried
+            // whether or not there is.
+            if (!mGoogleApiClient.isConnected()) {
+                if (!mGoogleApiClient.isConnecting()) {
+                    mGoogleApiClient.connect();
+                }
+            } else {
+                flush();
+            }
+        }
+    };
+
+    public static synchronized WearableConnection get(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearableConnection(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WearableConnection(Context context) {
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .addApi(Wearable.API)
+                .build();
+    }
+
+    /**
+     * Puts the data item as soon as the client is connected.
+     *
+     * @param callback told when it was put, may be null
+     */
+    public void putDataItem(PutDataRequest request, Callback callback) {
+        final PendingItem item = new PendingItem(request, callback, SystemClock.elapsedRealtime());
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                enqueue(item);
+                flush();
+            }
+        });
+    }
+
+    /**
+     * Sends the message to the node as soon as the client is connected.
+     */
+    public void sendMessage(String nodeId, String path, byte[] data) {
+        final PendingMessage message = new PendingMessage(nodeId, path, data);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mPendingMessages.put(message.mNodeId + message.mPath, message);
+                flush();
+            }
+        });
+    }
+
+    private void enqueue(PendingItem item) {
+        String path = item.mRequest.getUri().getPath();
+        if (mPending.remove(path) != null) {
+            Log.d(LOG_TAG, "Replacing the queued data item for " + path);
+        }
+        mPending.put(path, item);
+    }
+
+    /**
+     * Puts every queued item and sends every queued message, or connects first if needed.
+     */
+    private void flush() {
+        if (mPending.isEmpty() && mPendingMessages.isEmpty()) {
+            return;
+        }
+        if (!mGoogleApiClient.isConnected()) {
+            if (!mGoogleApiClient.isConnecting()) {
+                mGoogleApiClient.connect();
+            }
+            return;
+        }
+
+        List<PendingItem> batch = new ArrayList<PendingItem>(mPending.values());
+        mPending.clear();
+        for (final PendingItem item : batch) {
+            Wearable.DataApi.putDataItem(mGoogleApiClient, item.mRequest)
+                    .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
+                        @Override
+                        public void onResult(DataApi.DataItemResult dataItemResult) {
+                            if (dataItemResult.getStatus().isSuccess()) {
+                                onPut(item);
+                            } else {
+                                onPutFailed(item);
+                            }
+                        }
+                    });
+        }
+
+        List<PendingMessage> messages = new ArrayList<PendingMessage>(mPendingMessages.values());
+        mPendingMessages.clear();
+        for (final PendingMessage message : messages) {
+            Wearable.MessageApi.sendMessage(mGoogleApiClient, message.mNodeId, message.mPath,
+                    message.mData).setResultCallback(
+                    new ResultCallback<MessageApi.SendMessageResult>() {
+                        @Override
+                        public void onResult(MessageApi.SendMessageResult sendMessageResult) {
+                            Log.d(LOG_TAG, (sendMessageResult.getStatus().isSuccess()
+                                    ? "Sent " : "Failed to send ") + message.mPath + " to "
+                                    + message.mNodeId);
+                        }
+                    });
+        }
+    }
+
+    private void onPut(PendingItem item) {
+        long latency = SystemClock.elapsedRealtime() - item.mQueuedMillis;
+        mPutCount++;
+        mTotalLatencyMillis += latency;
+        mMaxLatencyMillis = Math.max(mMaxLatencyMillis, latency);
+        mBackoffMillis = MIN_BACKOFF_MILLIS;
+        Log.d(LOG_TAG, "Put " + item.mRequest.getUri().getPath() + " after " + latency + "ms ("
+                + mPutCount + " put, " + mFailedPutCount + " failed, average "
+                + mTotalLatencyMillis / mPutCount + "ms, max " + mMaxLatencyMillis + "ms)");
+        if (item.mCallback != null) {
+            item.mCallback.onDataItemPut(item.mRequest);
+        }
+    }
+
+    private void onPutFailed(PendingItem item) {
+        mFailedPutCount++;
+        String path = item.mRequest.getUri().getPath();
+        Log.d(LOG_TAG, "Failed to put " + path + ", retrying in " + mBackoffMillis + "ms");
+        // A newer item for the path may have been queued meanwhile; it wins.
+        if (!mPending.containsKey(path)) {
+            mPending.put(path, item);
+        }
+        scheduleRetry();
+    }
+
+    private void scheduleRetry() {
+        if (mRetryScheduled) {
+            return;
+        }
+        mRetryScheduled = true;
+        mHandler.postDelayed(mRetry, mBackoffMillis);
+        mBackoffMillis = Math.min(mBackoffMillis * 2, MAX_BACKOFF_MILLIS);
+    }
+
+    @Override  // GoogleApiClient.ConnectionCallbacks
+    public void onConnected(Bundle connectionHint) {
+        Log.d(LOG_TAG, "Connected, " + mPending.size() + " data items queued");
+        flush();
+    }
+
+    @Override  // GoogleApiClient.ConnectionCallbacks
+    public void onConnectionSuspended(int cause) {
+        // The client reconnects by itself.
+        Log.d(LOG_TAG, "Connection suspended: " + cause);
+    }
+
+    @Override  // GoogleApiClient.OnConnectionFailedListener
+    public void onConnectionFailed(ConnectionResult result) {
+        if (isUnrecoverable(result.getErrorCode())) {
+            // Retrying won't help; the next item handed over tries once more.
+            Log.d(LOG_TAG, "Connection failed: " + result + ", dropping " + mPending.size()
+                    + " data items and " + mPendingMessages.size() + " messages");
+            mPending.clear();
+            mPendingMessages.clear();
+            mBackoffMillis = MIN_BACKOFF_MILLIS;
+            return;
+        }
+        Log.d(LOG_TAG, "Connection failed: " + result + ", retrying in " + mBackoffMillis + "ms");
+        scheduleRetry();
+    }
+
+    // Errors no retry can fix without the user installing or enabling something.
+    private static boolean isUnrecoverable(int errorCode) {
+        switch (errorCode) {
+            case ConnectionResult.API_UNAVAILABLE:
+            case ConnectionResult.SERVICE_MISSING:
+            case ConnectionResult.SERVICE_INVALID:
+            case ConnectionResult.SERVICE_DISABLED:
+            case ConnectionResult.SERVICE_VERSION_UPDATE_REQUIRED:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
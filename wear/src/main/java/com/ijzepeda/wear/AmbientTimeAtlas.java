@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ijzepeda.wear;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * The characters the ambient time can show, rendered once into an alpha-only bitmap.  Drawing
+ * the time is then a bitmap copy per character at widths measured up front, with no text
+ * shaping or measuring, which is all an ambient frame needs once a minute.
+ *
+ * Characters are laid out one after the other without kerning, so the time can look a little
+ * looser than the same text drawn with drawText.
+ */
+class AmbientTimeAtlas {
+
+    private static final String DIGITS = "0123456789: ";
+
+    private Bitmap mAtlas;
+    // The characters in the atlas, and each one's cell and advance.
+    private char[] mGlyphs;
+    private int[] mCellLefts;
+    private float[] mAdvances;
+    private int mCellHeight;
+    private int mAscent;
+
+    private final Rect mSrc = new Rect();
+    private final Rect mDst = new Rect();
+    private final Paint mBitmapPaint = new Paint();
+
+    /**
+     * Renders the digits, the colon, the space and the characters of the AM and PM strings
+     * with the paint's typeface and size.  Only the glyph shapes are kept, the color comes
+     * from the paint given to {@link #draw}.
+     */
+    void build(Paint textPaint, String amString, String pmString) {
+        release();
+
+        StringBuilder glyphs = new StringBuilder(DIGITS);
+        appendMissing(glyphs, amString);
+        appendMissing(glyphs, pmString);
+        mGlyphs = glyphs.toString().toCharArray();
+
+        Paint paint = new Paint(textPaint);
+        paint.setColor(0xffffffff);
+        Paint.FontMetricsInt metrics = paint.getFontMetricsInt();
+        mAscent = -metrics.top;
+        mCellHeight = Math.max(1, metrics.bottom - metrics.top);
+
+        mCellLefts = new int[mGlyphs.length];
+        mAdvances = new float[mGlyphs.length];
+        int width = 0;
+        for (int i = 0; i < mGlyphs.length; i++) {
+            mCellLefts[i] = width;
+            mAdvances[i] = paint.measureText(mGlyphs, i, 1);
+            width += (int) Math.ceil(mAdvances[i]) + 1;
+        }
+
+        mAtlas = Bitmap.createBitmap(Math.max(1, width), mCellHeight, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(mAtlas);
+        for (int i = 0; i < mGlyphs.length; i++) {
+            canvas.drawText(mGlyphs, i, 1, mCellLefts[i], mAscent, paint);
+        }
+    }
+
+    private static void appendMissing(StringBuilder glyphs, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (glyphs.indexOf(String.valueOf(text.charAt(i))) < 0) {
+                glyphs.append(text.charAt(i));
+            }
+        }
+    }
+
+    boolean isBuilt() {
+        return mAtlas != null;
+    }
+
+    /**
+     * @return the width of the text, characters missing from the atlas count as nothing.
+     */
+    float measure(char[] text, int length) {
+        float width = 0;
+        for (int i = 0; i < length; i++) {
+            int glyph = indexOf(text[i]);
+            if (glyph >= 0) {
+                width += mAdvances[glyph];
+            }
+        }
+        return width;
+    }
+
+    /**
+     * Draws the text with its baseline at y, in the paint's color.  Anti-aliasing was decided
+     * when the atlas was built, the paint's filtering is turned off for the copies.
+     */
+    void draw(Canvas canvas, char[] text, int length, float x, float y, Paint paint) {
+        mBitmapPaint.set(paint);
+        mBitmapPaint.setFilterBitmap(false);
+        int top = Math.round(y) - mAscent;
+        for (int i = 0; i < length; i++) {
+            int glyph = indexOf(text[i]);
+            if (glyph < 0) {
+                continue;
+            }
+            int left = Math.round(x);
+            int cellWidth = (int) Math.ceil(mAdvances[glyph]);
+            mSrc.set(mCellLefts[glyph], 0, mCellLefts[glyph] + cellWidth, mCellHeight);
+            mDst.set(left, top, left + cellWidth, top + mCellHeight);
+            canvas.drawBitmap(mAtlas, mSrc, mDst, mBitmapPaint);
+            x += mAdvances[glyph];
+        }
+    }
+
+    private int indexOf(char c) {
+        for (int i = 0; i < mGlyphs.length; i++) {
+            if (mGlyphs[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int getByteCount() {
+        return mAtlas != null ? mAtlas.getByteCount() : 0;
+    }
+
+    void release() {
+        if (mAtlas != null) {
+            mAtlas.recycle();
+            mAtlas = null;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ijzepeda.wear;
+
+/**
+ * The days of forecast the phone sent, kept in a ring indexed by julian day.  A new payload
+ * overwrites the days it has, and days from an older one stay until their slot comes around
+ * again, so at midnight the watch face can move on to tomorrow's forecast without asking the
+ * phone.
+ */
+final class ForecastRing {
+
+    // The two weeks the phone sends and spare slots, so today and the last day sent never
+    // share one.
+    static final int CAPACITY = 16;
+
+    private static final int NO_DAY = Integer.MIN_VALUE;
+
+    private final int[] mJulianDays = new int[CAPACITY];
+    private final int[] mWeatherIds = new int[CAPACITY];
+    // Tenths of a degree Celsius.
+    private final int[] mHighs = new int[CAPACITY];
+    private final int[] mLows = new int[CAPACITY];
+
+    private boolean mMetric;
+
+    ForecastRing() {
+        for (int slot = 0; slot < CAPACITY; slot++) {
+            mJulianDays[slot] = NO_DAY;
+        }
+    }
+
+    void put(WeatherPayload payload) {
+        mMetric = payload.mMetric;
+        for (int day = 0; day < payload.getDayCount(); day++) {
+            int julianDay = payload.mFirstJulianDay + day;
+            int slot = slotOf(julianDay);
+            mJulianDays[slot] = julianDay;
+            mWeatherIds[slot] = payload.mWeatherIds[day];
+            mHighs[slot] = payload.mHighs[day];
+            mLows[slot] = payload.mLows[day];
+        }
+    }
+
+    /**
+     * @return the slot holding the day, or -1 if the ring doesn't have it.
+     */
+    int indexOf(int julianDay) {
+        int slot = slotOf(julianDay);
+        return mJulianDays[slot] == julianDay ? slot : -1;
+    }
+
+    /**
+     * @return how many days in a row the ring has, starting with the given one.
+     */
+    int getDaysFrom(int julianDay) {
+        int count = 0;
+        while (count < CAPACITY && indexOf(julianDay + count) >= 0) {
+            count++;
+        }
+        return count;
+    }
+
+    int getWeatherId(int slot) {
+        return mWeatherIds[slot];
+    }
+
+    /**
+     * @return the high in the unit the user picked on the phone.
+     */
+    double getHigh(int slot) {
+        return toUserUnit(mHighs[slot]);
+    }
+
+    double getLow(int slot) {
+        return toUserUnit(mLows[slot]);
+    }
+
+    private double toUserUnit(int tenthsCelsius) {
+        double temperature = tenthsCelsius / 10.0;
+        return mMetric ? temperature : temperature * 1.8 + 32;
+    }
+
+    private static int slotOf(int julianDay) {
+        int slot = julianDay % CAPACITY;
+        return slot < 0 ? slot + CAPACITY : slot;
+    }
+}
@@ -27,15 +27,17 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Debug;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.text.format.DateFormat;
+import android.text.format.Time;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
@@ -47,14 +49,16 @@ import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
-import com.google.android.gms.wearable.DataMap;
-import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.DataItemBuffer;
+import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.MessageEvent;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
 import java.lang.ref.WeakReference;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
@@ -63,7 +67,6 @@ import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import static android.R.attr.textColor;
-import static android.graphics.Bitmap.createScaledBitmap;
 
 /**
  * Sample digital watch face with blinking colons and seconds. In ambient mode, the seconds are
@@ -81,24 +84,64 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
 
     /**
-     * Update rate in milliseconds for normal (not ambient and not mute) mode. We update twice
-     * a second to blink the colons.
+     * Update rate in milliseconds for normal (not ambient and not mute) mode. We update once a
+     * second, when the seconds change; the colons don't blink on this face.
      */
-    private static final long NORMAL_UPDATE_RATE_MS = 500;
+    private static final long NORMAL_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
 
     /**
-     * Update rate in milliseconds for mute mode. We update every minute, like in ambient mode.
+     * Update rate in milliseconds for mute mode. We update every minute, like in ambient mode,
+     * and the seconds are hidden.
      */
     private static final long MUTE_UPDATE_RATE_MS = TimeUnit.MINUTES.toMillis(1);
 
     private static final int MSG_UPDATE_TIME = 0;
 
+    // Modes the draws per minute are counted in.
+    private static final int DRAW_MODE_INTERACTIVE = 0;
+    private static final int DRAW_MODE_MUTE = 1;
+    private static final int DRAW_MODE_AMBIENT = 2;
+
+    /** How many frames the draw time and allocations are averaged over before being logged. */
+    private static final int FRAME_STATS_INTERVAL = 120;
+
+    /** How many ambient frames the time drawing cost is averaged over, per path. */
+    private static final int AMBIENT_STATS_INTERVAL = 10;
+
+    // Ways of drawing the time in ambient mode, compared when profiling.
+    private static final int AMBIENT_PATH_TEXT = 0;
+    private static final int AMBIENT_PATH_ATLAS = 1;
+
+    /**
+     * With burn-in protection, the ambient time moves by up to this many pixels each minute,
+     * following BURN_IN_OFFSETS, so no pixel stays lit for long.
+     */
+    private static final int BURN_IN_OFFSET_PX = 3;
+    private static final int[][] BURN_IN_OFFSETS = {
+            {0, 0}, {1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}
+    };
+
+    /**
+     * How old the forecast may get before the watch asks the phone for a new one.  The phone
+     * syncs every three hours on its own but only sends the forecast when it changed, so an
+     * unchanged forecast goes stale here; asking then gets back the time of the phone's last
+     * sync, which makes it fresh again without sending it over.
+     */
+    private static final long WEATHER_STALE_MS = TimeUnit.HOURS.toMillis(3);
+
+    /**
+     * How long to wait before asking the phone again.  Turning the wrist reconnects the watch
+     * face, and each time would ask again while the phone is still answering.
+     */
+    private static final long WEATHER_REQUEST_INTERVAL_MS = TimeUnit.MINUTES.toMillis(30);
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
     }
 
     private class Engine extends CanvasWatchFaceService.Engine implements DataApi.DataListener,
+            MessageApi.MessageListener,
             GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
         static final String COLON_STRING = ":";
 
@@ -109,16 +152,17 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
         static final int NORMAL_ALPHA = 255;
 
         static final int MSG_UPDATE_TIME = 0;
+        static final int MSG_REDRAW = 1;
+
+        // Chars in the time buffers before any AM/PM is known to need more.
+        static final int TIME_CAPACITY = 16;
 
         /** How often {@link #mUpdateTimeHandler} ticks in milliseconds. */
         long mInteractiveUpdateRateMs = NORMAL_UPDATE_RATE_MS;
         private static final String WEATHER_PATH = "/weather";
         private static final String WEATHER_INFO_PATH = "/weather-info";
+        private static final String WEATHER_SYNCED_PATH = "/weather-synced";
 
-        private static final String KEY_UUID = "uuid";
-        private static final String KEY_HIGH = "high";
-        private static final String KEY_LOW = "low";
-        private static final String KEY_WEATHER_ID = "weatherId";
         /** Handler to update the time periodically in interactive mode. */
         final Handler mUpdateTimeHandler = new Handler() {
 
@@ -129,23 +173,31 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
                         if (Log.isLoggable(TAG, Log.VERBOSE)) {
                             Log.v(TAG, "updating time");
                         }
-                        invalidate();
+                        long timeMs = System.currentTimeMillis();
+                        // Only draw if the time on screen changes, a tick can come early.
+                        if (mRedrawRequested || getDisplayedTimeUnit(timeMs) != mDrawnTimeUnit) {
+                            invalidate();
+                        } else {
+                            mSkippedTicks++;
+                        }
                         if (shouldTimerBeRunning()) {
-                            long timeMs = System.currentTimeMillis();
+                            // Tick right when the next second (or minute, in mute mode) starts.
                             long delayMs =
                                     mInteractiveUpdateRateMs - (timeMs % mInteractiveUpdateRateMs);
                             mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
                         }
                         break;
+                    case MSG_REDRAW:
+                        invalidate();
+                        break;
                 }
             }
         };
 
-        GoogleApiClient mGoogleApiClient = new GoogleApiClient.Builder(MyWatchFaceService.this)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .addApi(Wearable.API)
-                .build();
+        // The process-wide client.  The engine stays connected and listening for as long as it
+        // lives, instead of reconnecting every time the screen turns on.
+        WearableConnection mConnection;
+        boolean mListening;
 
         /**
          * Handles time zone and locale changes.
@@ -155,10 +207,24 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             public void onReceive(Context context, Intent intent) {
                 mCalendar.setTimeZone(TimeZone.getDefault());
                 initFormats();
-                invalidate();
+                requestRedraw();
             }
         };
 
+        /*
+         * Set by requestRedraw() until the next frame is drawn, so any number of data events
+         * and broadcasts arriving together cost a single frame.
+         */
+        boolean mRedrawRequested;
+
+        // The second (or minute, when the seconds are hidden) the last frame showed.
+        long mDrawnTimeUnit = -1;
+        int mSkippedTicks;
+
+        // Draws per mode during the current minute, logged when the minute is over.
+        final int[] mDrawsPerMode = new int[3];
+        long mDrawCountMinute;
+
         /**
          * Unregistering an unregistered receiver throws an exception. Keep track of the
          * registration state to prevent that.
@@ -174,10 +240,42 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
         Paint mTextTempLowPaint;
         Paint mTextTempLowAmbientPaint;
 
+        // Icons come from the cache, which may recycle one it evicts: see updateWeatherIcon().
+        WeatherIconCache mIconCache;
         Bitmap mWeatherIcon;
 
         String mWeatherHigh;
         String mWeatherLow;
+        // Today's condition, 0 until the phone sends the forecast.
+        int mWeatherId;
+
+        // The last forecast received, kept on disk so a restart can show it right away.
+        WeatherSnapshotStore mSnapshotStore;
+        byte[] mWeatherData;
+        // When the forecast shown reached the watch, kept with it in the snapshot.
+        long mWeatherReceivedMillis;
+        // When the phone last synced the forecast, from its answer to a request, or 0 if the
+        // phone hasn't said since the watch face started.
+        long mWeatherSyncMillis;
+
+        // Every day the phone sent.  The one shown is today's, until the date changes.
+        final ForecastRing mForecast = new ForecastRing();
+        int mShownJulianDay = Integer.MIN_VALUE;
+        // Forecasts received, and days moved on to from the ring rather than from the phone.
+        int mWeatherTransfers;
+        int mLocalRollovers;
+
+        // When the phone was last asked for the weather, in elapsedRealtime, and how often the
+        // watch face asked or didn't need to.
+        long mLastWeatherRequestMillis;
+        int mWeatherRequests;
+        int mWeatherRequestsSkippedFresh;
+        int mWeatherRequestsSkippedRecent;
+
+        // For the time from onCreate to the first frame with the weather in it.
+        long mCreatedMillis;
+        boolean mFirstCompleteFrameLogged;
+        String mWeatherSource;
 
         boolean mAmbient;
 
@@ -199,6 +297,74 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
         float mLineHeight;
         String mAmString;
         String mPmString;
+
+        /*
+         * Everything onDraw needs is prepared here, so drawing a frame allocates nothing: the
+         * names come from tables loaded in initFormats(), the time is written digit by digit
+         * into a char buffer, and text is only measured again when it changed.
+         */
+        String[] mWeekDayNames;
+        String[] mMonthNames;
+        // The locale the names and the AM/PM strings were loaded for.
+        Locale mFormatsLocale;
+        boolean mIs24Hour;
+
+        char[] mTimeChars;
+        int mTimeLength;
+        // The time text mTimeWidth was measured for.
+        char[] mMeasuredTimeChars;
+        int mMeasuredTimeLength = -1;
+        float mTimeWidth;
+
+        // The date only changes once a day, its text and widths are rebuilt then.
+        final StringBuilder mDateBuilder = new StringBuilder();
+        int mDateKey = -1;
+        String mDateText;
+        float mDateWidth;
+        float mDateAmbientWidth;
+
+        float mWeatherHighWidth;
+        float mWeatherLowWidth;
+        float mWeatherLowAmbientWidth;
+
+        /*
+         * The background, date, divider and weather row only change once a day, once a sync or
+         * when the mode changes, so they are drawn into this layer and each tick just copies it
+         * and draws the time on top.  Whatever changes one of them calls invalidateRegion() or
+         * invalidateStaticLayer().
+         */
+        Bitmap mStaticLayer;
+        Canvas mStaticLayerCanvas;
+
+        /*
+         * Which rows of the static layer need drawing again.  A new date or new weather only
+         * redraws its own row, clipped, over what the layer already holds; ambient changes,
+         * new sizes and a new layer redraw all of it.  The watch face surface itself keeps no
+         * content between frames, so each frame still copies the whole layer to it.
+         */
+        static final int DIRTY_DATE = 1;
+        static final int DIRTY_WEATHER = 1 << 1;
+        static final int DIRTY_ALL = ~0;
+        int mDirtyRegions = DIRTY_ALL;
+
+        // Rows of the face, full width, measured when the text sizes are known.
+        final Rect mTimeRegion = new Rect();
+        final Rect mDateRegion = new Rect();
+        final Rect mWeatherRegion = new Rect();
+        boolean mRegionsMeasured;
+        boolean mUseStaticLayer = true;
+        boolean mIsRound;
+
+        /**
+         * Draw time and, with "adb shell setprop log.tag.>MyWatchFaceService VERBOSE" before the
+         * watch face starts, allocations per frame, logged every FRAME_STATS_INTERVAL frames.
+         */
+        boolean mCountAllocations;
+        int mStatsFrames;
+        long mStatsDrawNanos;
+        long mStatsMaxDrawNanos;
+        int mStatsAllocations;
+        long mStatsPixels;
         int mInteractiveBackgroundColor =
                 getResources().getColor(R.color.primary);
         /**
@@ -207,6 +373,26 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
          */
         boolean mLowBitAmbient;
 
+        boolean mBurnInProtection;
+
+        /*
+         * The ambient time is drawn from this atlas of pre-rendered characters, built when the
+         * text size, the low-bit property or the AM/PM strings change.  When profiling, ambient
+         * frames alternate between it and drawText, and the time drawing cost of each is logged.
+         */
+        final AmbientTimeAtlas mAmbientAtlas = new AmbientTimeAtlas();
+        boolean mTextSized;
+        // What the atlas was last built with; initFormats() runs on every wrist turn, and the
+        // atlas is only built again when one of these differs.
+        float mAtlasTextSize;
+        boolean mAtlasLowBitAmbient;
+        boolean mAtlasIs24Hour;
+        String mAtlasAmString;
+        String mAtlasPmString;
+        boolean mUseAmbientAtlas = true;
+        final long[] mAmbientTimeNanos = new long[2];
+        final int[] mAmbientTimeFrames = new int[2];
+
         @Override
         public void onCreate(SurfaceHolder holder) {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
@@ -222,8 +408,6 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             Resources resources = MyWatchFaceService.this.getResources();
             mYOffset = resources.getDimension(R.dimen.digital_y_offset);
             mLineHeight = resources.getDimension(R.dimen.digital_line_height);
-            mAmString = resources.getString(R.string.digital_am);
-            mPmString = resources.getString(R.string.digital_pm);
 
             mTimeYOffset = resources.getDimension(R.dimen.digital_time_y_offset);
             mDateYOffset = resources.getDimension(R.dimen.digital_date_y_offset);
@@ -247,14 +431,40 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
 
 
 //Default icon if hasnt fetch data
-            Drawable b = getResources().getDrawable(getWeatherImage(0));
-            Bitmap icon = ((BitmapDrawable) b).getBitmap();
-            float scaledWidth = (mTextTempHighPaint.getTextSize() / icon.getHeight()) * icon.getWidth();
-            mWeatherIcon = Bitmap.createScaledBitmap(icon, (int) scaledWidth, (int) mTextTempHighPaint.getTextSize(), true);
+            mIconCache = new WeatherIconCache(resources);
+            updateWeatherIcon();
 
             mCalendar = Calendar.getInstance();
             mDate = new Date();
+            // "hh:mm:ss " and room for AM or PM; initFormats() only grows them for a locale
+            // with longer ones.
+            mTimeChars = new char[TIME_CAPACITY];
+            mMeasuredTimeChars = new char[TIME_CAPACITY];
             initFormats();
+
+            // Show the last forecast we know of until the phone sends a newer one.
+            mCreatedMillis = SystemClock.elapsedRealtime();
+            mSnapshotStore = new WeatherSnapshotStore(MyWatchFaceService.this);
+            WeatherSnapshotStore.Snapshot snapshot = mSnapshotStore.read();
+            if (snapshot != null) {
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Weather snapshot from "
+                            + (System.currentTimeMillis() - snapshot.mReceivedMillis) / 1000
+                            + "s ago");
+                }
+                applyWeatherData(snapshot.mPayload, snapshot.mReceivedMillis, "snapshot", false);
+            }
+
+            // After the snapshot, which tells whether the phone needs to be asked.
+            mConnection = WearableConnection.get(MyWatchFaceService.this);
+            mConnection.addConnectionCallbacks(this, this);
+
+            // When profiling, frames also alternate between the layer and direct drawing, so
+            // both can be compared on the same watch.
+            mCountAllocations = Log.isLoggable(TAG, Log.VERBOSE);
+            if (mCountAllocations) {
+                Debug.startAllocCounting();
+            }
         }
         private Paint createTextPaintBold(int textColor) {
             Paint paint = new Paint();
@@ -265,7 +475,19 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
         }
         @Override
         public void onDestroy() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            // Ticks and pending redraws both.
+            mUpdateTimeHandler.removeCallbacksAndMessages(null);
+            if (mListening && mConnection.getClient().isConnected()) {
+                Wearable.DataApi.removeListener(mConnection.getClient(), this);
+                Wearable.MessageApi.removeListener(mConnection.getClient(), this);
+            }
+            mListening = false;
+            mConnection.removeConnectionCallbacks(this, this);
+            mIconCache.clear();
+            mAmbientAtlas.release();
+            if (mCountAllocations) {
+                Debug.stopAllocCounting();
+            }
             super.onDestroy();
         }
 
@@ -294,7 +516,10 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             super.onVisibilityChanged(visible);
 
             if (visible) {
-                mGoogleApiClient.connect();
+                // The forecast may have gone stale while the screen was off.
+                if (mConnection.getClient().isConnected()) {
+                    maybeRequestWeather();
+                }
 
                 registerReceiver();
 
@@ -303,11 +528,6 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
                 initFormats();
             } else {
                 unregisterReceiver();
-
-                if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
-                    Wearable.DataApi.removeListener(mGoogleApiClient, this);
-                    mGoogleApiClient.disconnect();
-                }
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -315,9 +535,35 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             updateTimer();
         }
 
+        /**
+         * Called on every visibility change, so the names are only loaded again when the
+         * locale changed, and the time buffers only grow when they're too short.
+         */
         private void initFormats() {
             long now = System.currentTimeMillis();
             mCalendar.setTimeInMillis(now);
+
+            Locale locale = Locale.getDefault();
+            if (!locale.equals(mFormatsLocale)) {
+                mFormatsLocale = locale;
+                Resources resources = getResources();
+                mWeekDayNames = resources.getStringArray(R.array.weekDay);
+                mMonthNames = resources.getStringArray(R.array.months);
+                mAmString = resources.getString(R.string.digital_am);
+                mPmString = resources.getString(R.string.digital_pm);
+
+                // "hh:mm:ss " and the longest of AM and PM.
+                int timeCapacity = 9 + Math.max(mAmString.length(), mPmString.length());
+                if (timeCapacity > mTimeChars.length) {
+                    mTimeChars = new char[timeCapacity];
+                    mMeasuredTimeChars = new char[timeCapacity];
+                }
+            }
+            mIs24Hour = DateFormat.is24HourFormat(MyWatchFaceService.this);
+            buildAmbientAtlas();
+
+            mMeasuredTimeLength = -1;
+            mDateKey = -1;
 //            mDayOfWeekFormat = new SimpleDateFormat("EEEE", Locale.getDefault());
 //            mDayOfWeekFormat.setCalendar(mCalendar);
 //            mDateFormat = DateFormat.getDateFormat(MyWatchFaceService.this);
@@ -331,6 +577,8 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             mRegisteredReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
             filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            // Also sent when the user switches between 12 and 24 hour time.
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
             MyWatchFaceService.this.registerReceiver(mReceiver, filter);
         }
 
@@ -352,6 +600,7 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             // Load resources that have alternate values for round watches.
             Resources resources = MyWatchFaceService.this.getResources();
             boolean isRound = insets.isRound();
+            mIsRound = isRound;
             mXOffset = resources.getDimension(isRound
                     ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
             float textSize = resources.getDimension(isRound
@@ -376,12 +625,62 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             mTextTempHighPaint.setTextSize(tempTextSize);
             mTextTempLowAmbientPaint.setTextSize(tempTextSize);
             mTextTempLowPaint.setTextSize(tempTextSize);
+
+            // The sizes changed, so does every width measured with them.
+            mMeasuredTimeLength = -1;
+            mDateKey = -1;
+            measureWeather();
+            updateWeatherIcon();
+            measureRegions();
+            invalidateStaticLayer();
+
+            mTextSized = true;
+            buildAmbientAtlas();
+        }
+
+        /**
+         * Renders the ambient time characters at the time text size.  Without anti-aliasing on
+         * low-bit screens, like the text path does in ambient mode.  Does nothing when the atlas
+         * was already built for the same size, mode and strings.
+         */
+        private void buildAmbientAtlas() {
+            if (!mTextSized) {
+                return;
+            }
+            float textSize = mTextPaint.getTextSize();
+            String am = getAmPmString(true);
+            String pm = getAmPmString(false);
+            if (mAmbientAtlas.isBuilt() && textSize == mAtlasTextSize
+                    && mLowBitAmbient == mAtlasLowBitAmbient && mIs24Hour == mAtlasIs24Hour
+                    && am.equals(mAtlasAmString) && pm.equals(mAtlasPmString)) {
+                return;
+            }
+            mAtlasTextSize = textSize;
+            mAtlasLowBitAmbient = mLowBitAmbient;
+            mAtlasIs24Hour = mIs24Hour;
+            mAtlasAmString = am;
+            mAtlasPmString = pm;
+
+            Paint paint = new Paint(mTextPaint);
+            paint.setAntiAlias(!mLowBitAmbient);
+            mAmbientAtlas.build(paint, am, pm);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Ambient atlas: " + mAmbientAtlas.getByteCount() + " bytes");
+            }
+        }
+
+        private String getAmPmString(boolean am) {
+            // Built before initFormats() has run the first time, with no AM/PM yet.
+            String amPm = am ? mAmString : mPmString;
+            return amPm != null ? amPm : "";
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mBurnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
+            buildAmbientAtlas();
 
 //            boolean burnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
 //            mHourPaint.setTypeface(burnInProtection ? NORMAL_TYPEFACE : BOLD_TYPEFACE);
@@ -427,7 +726,8 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
                     mTextTempLowAmbientPaint.setAntiAlias(!inAmbientMode);
                     mTextTempLowPaint.setAntiAlias(!inAmbientMode);
                 }
-                invalidate();
+                invalidateStaticLayer();
+                requestRedraw();
             }
             // Whether the timer should be running depends on whether we're in ambient mode (as well
             // as whether we're visible), so we may need to start or stop the timer.
@@ -447,6 +747,10 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             super.onInterruptionFilterChanged(interruptionFilter);
 
             boolean inMuteMode = interruptionFilter == WatchFaceService.INTERRUPTION_FILTER_NONE;
+            if (mMute != inMuteMode) {
+                mMute = inMuteMode;
+                requestRedraw();
+            }
             // We only need to update once a minute in mute mode.
             setInteractiveUpdateRateMs(inMuteMode ? MUTE_UPDATE_RATE_MS : NORMAL_UPDATE_RATE_MS);
 
@@ -468,54 +772,184 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            if(mAmbient) {
-                canvas.drawColor(Color.BLACK);
-            }else{
-                canvas.drawRect(0,0,bounds.width(),bounds.height(),mBackgroundPaint);
-            }
+            long drawStart = System.nanoTime();
+            int allocationsBefore = mCountAllocations ? Debug.getThreadAllocCount() : 0;
 
             //For Ambient remove Seconds, add if Interactive mode on
             long now = System.currentTimeMillis();
             mCalendar.setTimeInMillis(now);
-            boolean is24Hour =DateFormat.is24HourFormat(MyWatchFaceService.this);
+            mRedrawRequested = false;
+            mDrawnTimeUnit = getDisplayedTimeUnit(now);
+            countDraw(now);
+            // Pixels drawn this frame, besides copying the layer.
+            long pixels = 0;
+
+            updateDateText();
+            if (mUseStaticLayer) {
+                if (mStaticLayer == null || mStaticLayer.getWidth() != bounds.width()
+                        || mStaticLayer.getHeight() != bounds.height()) {
+                    mStaticLayer = Bitmap.createBitmap(bounds.width(), bounds.height(),
+                            Bitmap.Config.ARGB_8888);
+                    mStaticLayerCanvas = new Canvas(mStaticLayer);
+                    mDirtyRegions = DIRTY_ALL;
+                }
+                pixels += redrawDirtyRegions(bounds);
+                canvas.drawBitmap(mStaticLayer, 0, 0, null);
+            } else {
+                drawStaticLayer(canvas, bounds);
+                pixels += bounds.width() * bounds.height();
+            }
 
-            int mins=mCalendar.get(Calendar.MINUTE);
-            int secs=mCalendar.get(Calendar.SECOND);
-            int ampm=mCalendar.get(Calendar.AM_PM);
             //Draw the hours
-            String timeText;
-            if(is24Hour){
-                int hour=mCalendar.get(Calendar.HOUR_OF_DAY);
-                if(mAmbient)
-                    timeText=String.format("%02d:%02d",hour,mins);
-                else
-                    timeText=String.format("%02d:%02d:%02d",hour,mins,secs);
-            }else{
-                int hour = mCalendar.get(Calendar.HOUR);
-                if(hour==0)
-                    hour=12;
+            formatTime();
+            long timeStart = System.nanoTime();
+            if (mAmbient && mUseAmbientAtlas && mAmbientAtlas.isBuilt()) {
+                drawAmbientTime(canvas, bounds, now);
+            } else {
+                if (!isMeasuredTime()) {
+                    mTimeWidth = mTextPaint.measureText(mTimeChars, 0, mTimeLength);
+                    System.arraycopy(mTimeChars, 0, mMeasuredTimeChars, 0, mTimeLength);
+                    mMeasuredTimeLength = mTimeLength;
+                }
+                canvas.drawText(mTimeChars, 0, mTimeLength, bounds.centerX() - mTimeWidth / 2,
+                        mTimeYOffset, mTextPaint);
+            }
+            if (mAmbient) {
+                recordAmbientTime(mUseAmbientAtlas && mAmbientAtlas.isBuilt()
+                        ? AMBIENT_PATH_ATLAS : AMBIENT_PATH_TEXT, System.nanoTime() - timeStart);
+            }
+            pixels += bounds.width() * mTimeRegion.height();
 
-                String amPmText=ampm==Calendar.AM?getResources().getString(R.string.digital_am):getResources().getString(R.string.digital_pm);
-                if(mAmbient)
-                    timeText=String.format("%02d:%02d %s",hour,mins,amPmText);
-                else
-                    timeText=String.format("%02d:%02d:02d %s",hour,mins,secs,amPmText);
+            if (!mFirstCompleteFrameLogged && mWeatherHigh != null) {
+                mFirstCompleteFrameLogged = true;
+                Log.d(TAG, "First frame with weather " + (SystemClock.elapsedRealtime() - mCreatedMillis)
+                        + "ms after onCreate, from the " + mWeatherSource);
+            }
+
+            recordFrame(System.nanoTime() - drawStart,
+                    mCountAllocations ? Debug.getThreadAllocCount() - allocationsBefore : 0,
+                    pixels);
+        }
+
+        /**
+         * Draws the time from the atlas, moved a little every minute with burn-in protection.
+         */
+        private void drawAmbientTime(Canvas canvas, Rect bounds, long now) {
+            float x = bounds.centerX() - mAmbientAtlas.measure(mTimeChars, mTimeLength) / 2;
+            float y = mTimeYOffset;
+            if (mBurnInProtection) {
+                int[] offset = BURN_IN_OFFSETS[(int) (now / MUTE_UPDATE_RATE_MS
+                        % BURN_IN_OFFSETS.length)];
+                x += offset[0] * BURN_IN_OFFSET_PX;
+                y += offset[1] * BURN_IN_OFFSET_PX;
+            }
+            mAmbientAtlas.draw(canvas, mTimeChars, mTimeLength, x, y, mTextPaint);
+        }
+
+        /**
+         * Adds up what drawing the ambient time cost on the path, and logs both paths' averages
+         * once one of them has enough frames.
+         */
+        private void recordAmbientTime(int path, long nanos) {
+            mAmbientTimeNanos[path] += nanos;
+            mAmbientTimeFrames[path]++;
+            if (mAmbientTimeFrames[path] >= AMBIENT_STATS_INTERVAL) {
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Ambient time: text " + averageMicros(AMBIENT_PATH_TEXT)
+                            + "us over " + mAmbientTimeFrames[AMBIENT_PATH_TEXT] + " frames, atlas "
+                            + averageMicros(AMBIENT_PATH_ATLAS) + "us over "
+                            + mAmbientTimeFrames[AMBIENT_PATH_ATLAS] + " frames");
+                }
+                for (int i = 0; i < mAmbientTimeFrames.length; i++) {
+                    mAmbientTimeNanos[i] = 0;
+                    mAmbientTimeFrames[i] = 0;
+                }
+            }
+            if (mCountAllocations) {
+                // Profiling: draw the next ambient frame the other way.
+                mUseAmbientAtlas = !mUseAmbientAtlas;
+            }
+        }
+
+        private long averageMicros(int path) {
+            return mAmbientTimeFrames[path] == 0
+                    ? 0 : mAmbientTimeNanos[path] / mAmbientTimeFrames[path] / 1000;
+        }
+
+        /**
+         * Brings the static layer up to date, redrawing only the dirty rows when possible.
+         *
+         * @return the number of pixels redrawn
+         */
+        private long redrawDirtyRegions(Rect bounds) {
+            int dirty = mDirtyRegions;
+            mDirtyRegions = 0;
+            if (dirty == 0) {
+                return 0;
+            }
+            if (dirty == DIRTY_ALL || !mRegionsMeasured) {
+                drawStaticLayer(mStaticLayerCanvas, bounds);
+                return bounds.width() * bounds.height();
+            }
+            long pixels = 0;
+            if ((dirty & DIRTY_DATE) != 0) {
+                pixels += redrawRegion(mDateRegion, bounds);
+            }
+            if ((dirty & DIRTY_WEATHER) != 0) {
+                pixels += redrawRegion(mWeatherRegion, bounds);
+            }
+            return pixels;
+        }
+
+        private long redrawRegion(Rect region, Rect bounds) {
+            region.left = 0;
+            region.right = bounds.width();
+            mStaticLayerCanvas.save();
+            mStaticLayerCanvas.clipRect(region);
+            drawStaticLayer(mStaticLayerCanvas, bounds);
+            mStaticLayerCanvas.restore();
+            return region.width() * region.height();
+        }
+
+        /**
+         * Works out the rows the time, the date and the weather are drawn in, from the text
+         * sizes and offsets.
+         */
+        private void measureRegions() {
+            setRow(mTimeRegion, mTextPaint, mTimeYOffset);
+            setRow(mDateRegion, mTextDatePaint, mDateYOffset);
+
+            // The weather row goes from the divider line down to the temperatures, and has to
+            // fit the icon, which is as tall as the temperature text size.
+            setRow(mWeatherRegion, mTextTempHighPaint, mWeatherYOffset);
+            mWeatherRegion.top = Math.min(mWeatherRegion.top, (int) Math.floor(
+                    Math.min(mDividerYOffset - 1, mWeatherYOffset - mTextTempHighPaint.getTextSize())));
+            mRegionsMeasured = true;
+        }
+
+        private void setRow(Rect row, Paint paint, float baseline) {
+            Paint.FontMetrics fontMetrics = paint.getFontMetrics();
+            row.top = (int) Math.floor(baseline + fontMetrics.top) - 1;
+            row.bottom = (int) Math.ceil(baseline + fontMetrics.bottom) + 1;
+        }
+
+        /**
+         * Draws everything but the time: background, date, divider and weather row.
+         */
+        private void drawStaticLayer(Canvas canvas, Rect bounds) {
+            if(mAmbient) {
+                canvas.drawColor(Color.BLACK);
+            }else{
+                canvas.drawRect(0,0,bounds.width(),bounds.height(),mBackgroundPaint);
             }
 
-            float xOffsetTime=mTextPaint.measureText(timeText)/2;
-            canvas.drawText(timeText,bounds.centerX()-xOffsetTime,mTimeYOffset,mTextPaint);
 //switch colors if in ambient
            Paint datePaint = mAmbient ? mTextDateAmbientPaint : mTextDatePaint;
 
 
             //Draw Date
-            String weekDay= getResources().getStringArray(R.array.weekDay)[mCalendar.get(Calendar.DAY_OF_WEEK)];//getDayOfWeekString(mCalendar.get(Calendar.DAY_OF_WEEK));//mDayOfWeekFormat.format(mDate);
-            String month=getResources().getStringArray(R.array.months)[mCalendar.get(Calendar.MONTH)];
-            int dayofMonth=mCalendar.get(Calendar.DAY_OF_MONTH);
-            int year=mCalendar.get(Calendar.YEAR);
-            String dateText=String.format("%s, %s %d %d",weekDay,month,dayofMonth,year);
-            float xOffsetDate=datePaint.measureText(dateText)/2;
-            canvas.drawText(dateText, bounds.centerX()-xOffsetDate,mDateYOffset,datePaint);
+            float xOffsetDate = (mAmbient ? mDateAmbientWidth : mDateWidth) / 2;
+            canvas.drawText(mDateText, bounds.centerX()-xOffsetDate,mDateYOffset,datePaint);
 
 
 
@@ -529,14 +963,17 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             if (mWeatherHigh != null && mWeatherLow != null) {
                 canvas.drawLine(bounds.centerX()-55,mDividerYOffset,bounds.centerX()+55,mDividerYOffset,datePaint);
 
-                float highLen = mTextTempHighPaint.measureText(mWeatherHigh);
+                float highLen = mWeatherHighWidth;
 
                 if (mAmbient) {
-                    float lowTextLen = mTextTempLowAmbientPaint.measureText(mWeatherLow);
+                    float lowTextLen = mWeatherLowAmbientWidth;
                     float xOffset = bounds.centerX()-((highLen+lowTextLen+20)/2);
                     canvas.drawText(mWeatherHigh, xOffset, mWeatherYOffset, mTextTempHighPaint);
                     canvas.drawText(mWeatherLow, xOffset+highLen+20, mWeatherYOffset, mTextTempLowAmbientPaint);
                 } else {
+                    if (mWeatherIcon.isRecycled()) {
+                        updateWeatherIcon();
+                    }
                     float xOffset = bounds.centerX()-(highLen/2);
                     canvas.drawText(mWeatherHigh, xOffset, mWeatherYOffset, mTextTempHighPaint);
                     canvas.drawText(mWeatherLow, bounds.centerX()+(highLen/2)+20, mWeatherYOffset, mTextTempLowPaint);
@@ -614,6 +1051,191 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
 //            }
         }
 
+        /**
+         * Writes the current time into {@link #mTimeChars}: hh:mm, the seconds when interactive,
+         * and AM or PM in 12 hour mode.
+         */
+        private void formatTime() {
+            int hour;
+            if (mIs24Hour) {
+                hour = mCalendar.get(Calendar.HOUR_OF_DAY);
+            } else {
+                hour = mCalendar.get(Calendar.HOUR);
+                if (hour == 0) {
+                    hour = 12;
+                }
+            }
+            int length = putTwoDigits(mTimeChars, 0, hour);
+            mTimeChars[length++] = ':';
+            length = putTwoDigits(mTimeChars, length, mCalendar.get(Calendar.MINUTE));
+            if (isShowingSeconds()) {
+                mTimeChars[length++] = ':';
+                length = putTwoDigits(mTimeChars, length, mCalendar.get(Calendar.SECOND));
+            }
+            if (!mIs24Hour) {
+                String amPm = mCalendar.get(Calendar.AM_PM) == Calendar.AM ? mAmString : mPmString;
+                mTimeChars[length++] = ' ';
+                amPm.getChars(0, amPm.length(), mTimeChars, length);
+                length += amPm.length();
+            }
+            mTimeLength = length;
+        }
+
+        private int putTwoDigits(char[] chars, int offset, int value) {
+            chars[offset] = (char) ('0' + value / 10);
+            chars[offset + 1] = (char) ('0' + value % 10);
+            return offset + 2;
+        }
+
+        /**
+         * @return true if {@link #mTimeWidth} was measured for the time now in {@link #mTimeChars}.
+         */
+        private boolean isMeasuredTime() {
+            if (mMeasuredTimeLength != mTimeLength) {
+                return false;
+            }
+            for (int i = 0; i < mTimeLength; i++) {
+                if (mMeasuredTimeChars[i] != mTimeChars[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Rebuilds the date text, e.g. "Mon, Jan 5 2015", and its widths when the day changed.
+         */
+        private void updateDateText() {
+            int dateKey = mCalendar.get(Calendar.YEAR) * 1000 + mCalendar.get(Calendar.DAY_OF_YEAR);
+            if (dateKey == mDateKey) {
+                return;
+            }
+            // The weekDay array starts on Monday, Calendar's days on Sunday.
+            int weekDay = (mCalendar.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+            mDateBuilder.setLength(0);
+            mDateBuilder.append(mWeekDayNames[weekDay]).append(", ")
+                    .append(mMonthNames[mCalendar.get(Calendar.MONTH)]).append(' ')
+                    .append(mCalendar.get(Calendar.DAY_OF_MONTH)).append(' ')
+                    .append(mCalendar.get(Calendar.YEAR));
+            mDateText = mDateBuilder.toString();
+            mDateWidth = mTextDatePaint.measureText(mDateText);
+            mDateAmbientWidth = mTextDateAmbientPaint.measureText(mDateText);
+            mDateKey = dateKey;
+            invalidateRegion(DIRTY_DATE);
+
+            // A new day: tomorrow's forecast is already in the ring.
+            showTodaysWeather();
+        }
+
+        /**
+         * Makes the next frame redraw the whole static layer.
+         */
+        private void invalidateStaticLayer() {
+            mDirtyRegions = DIRTY_ALL;
+        }
+
+        /**
+         * Makes the next frame redraw one row of the static layer.
+         */
+        private void invalidateRegion(int region) {
+            mDirtyRegions |= region;
+        }
+
+        /**
+         * Measures the temperatures, after they or the text sizes changed.
+         */
+        private void measureWeather() {
+            if (mWeatherHigh == null || mWeatherLow == null) {
+                return;
+            }
+            mWeatherHighWidth = mTextTempHighPaint.measureText(mWeatherHigh);
+            mWeatherLowWidth = mTextTempLowPaint.measureText(mWeatherLow);
+            mWeatherLowAmbientWidth = mTextTempLowAmbientPaint.measureText(mWeatherLow);
+        }
+
+        private void recordFrame(long drawNanos, int allocations, long pixels) {
+            mStatsFrames++;
+            mStatsPixels += pixels;
+            mStatsDrawNanos += drawNanos;
+            mStatsMaxDrawNanos = Math.max(mStatsMaxDrawNanos, drawNanos);
+            mStatsAllocations += allocations;
+            if (mStatsFrames < FRAME_STATS_INTERVAL) {
+                return;
+            }
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "onDraw " + (mUseStaticLayer ? "from layer" : "direct")
+                        + (mIsRound ? ", round: " : ", square: ")
+                        + mStatsDrawNanos / mStatsFrames / 1000 + "us average, "
+                        + mStatsMaxDrawNanos / 1000 + "us max, "
+                        + mStatsPixels / mStatsFrames + " pixels drawn"
+                        + (mCountAllocations
+                                ? ", " + (float) mStatsAllocations / mStatsFrames + " allocations"
+                                : "")
+                        + " per frame over " + mStatsFrames + " frames");
+            }
+            mStatsFrames = 0;
+            mStatsDrawNanos = 0;
+            mStatsMaxDrawNanos = 0;
+            mStatsAllocations = 0;
+            mStatsPixels = 0;
+
+            if (mCountAllocations) {
+                // Profiling: measure the other way of drawing next.
+                mUseStaticLayer = !mUseStaticLayer;
+                invalidateStaticLayer();
+            }
+        }
+
+        /**
+         * Asks for a frame without drawing one per caller: requests made before the frame is
+         * drawn are merged into it.
+         */
+        private void requestRedraw() {
+            if (mRedrawRequested) {
+                return;
+            }
+            mRedrawRequested = true;
+            mUpdateTimeHandler.sendEmptyMessage(MSG_REDRAW);
+        }
+
+        private boolean isShowingSeconds() {
+            return !mAmbient && !mMute;
+        }
+
+        /**
+         * @return the second, or the minute when the seconds are hidden, the time on screen
+         * would show at the given time.  The frame only changes when this does.
+         */
+        private long getDisplayedTimeUnit(long timeMs) {
+            return isShowingSeconds()
+                    ? timeMs / NORMAL_UPDATE_RATE_MS
+                    : -(timeMs / MUTE_UPDATE_RATE_MS) - 1;
+        }
+
+        /**
+         * Counts the frame in its mode, and logs the draws of the last minute when a new one
+         * starts.  Compare the counts between modes to see what each costs in battery.
+         */
+        private void countDraw(long now) {
+            long minute = now / MUTE_UPDATE_RATE_MS;
+            if (minute != mDrawCountMinute) {
+                if (mDrawCountMinute != 0 && Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Draws in the last minute: "
+                            + mDrawsPerMode[DRAW_MODE_INTERACTIVE] + " interactive, "
+                            + mDrawsPerMode[DRAW_MODE_MUTE] + " mute, "
+                            + mDrawsPerMode[DRAW_MODE_AMBIENT] + " ambient, "
+                            + mSkippedTicks + " ticks skipped");
+                }
+                mDrawsPerMode[DRAW_MODE_INTERACTIVE] = 0;
+                mDrawsPerMode[DRAW_MODE_MUTE] = 0;
+                mDrawsPerMode[DRAW_MODE_AMBIENT] = 0;
+                mSkippedTicks = 0;
+                mDrawCountMinute = minute;
+            }
+            mDrawsPerMode[mAmbient ? DRAW_MODE_AMBIENT
+                    : mMute ? DRAW_MODE_MUTE : DRAW_MODE_INTERACTIVE]++;
+        }
+
         /**
          * Starts the {@link #mUpdateTimeHandler} timer if it should be running and isn't currently
          * or stops it if it shouldn't be running but currently is.
@@ -643,28 +1265,12 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             for (DataEvent dataEvent : dataEvents) {
                 if (dataEvent.getType() == DataEvent.TYPE_CHANGED) {
 
-                    DataMap dataMap = DataMapItem.fromDataItem(dataEvent.getDataItem()).getDataMap();
                     String path = dataEvent.getDataItem().getUri().getPath();
                     Log.d(TAG, path);
 //                    if (path.equals(WEATHER_PATH)) {
                     if (path.equals(WEATHER_INFO_PATH)) {
-                        if (dataMap.containsKey(KEY_HIGH)) {
-                            mWeatherHigh = dataMap.getString(KEY_HIGH);
-                        }
-
-                        if (dataMap.containsKey(KEY_LOW)) {
-                            mWeatherLow = dataMap.getString(KEY_LOW);
-                        }
-
-                        if (dataMap.containsKey(KEY_WEATHER_ID)) {
-                            int weatherId = dataMap.getInt(KEY_WEATHER_ID);
-                            Drawable b = getResources().getDrawable(getWeatherImage(weatherId));
-                            Bitmap icon = ((BitmapDrawable) b).getBitmap();
-                            float scaledWidth = (mTextTempHighPaint.getTextSize() / icon.getHeight()) * icon.getWidth();
-                            mWeatherIcon = createScaledBitmap(icon, (int) scaledWidth, (int) mTextTempHighPaint.getTextSize(), true);
-                        }
-
-                        invalidate();
+                        applyWeatherData(dataEvent.getDataItem().getData(),
+                                System.currentTimeMillis(), "phone", true);
                     }
                 }
 
@@ -685,13 +1291,118 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
 
 
 
+        @Override  // MessageApi.MessageListener
+        public void onMessageReceived(MessageEvent messageEvent) {
+            if (!WEATHER_SYNCED_PATH.equals(messageEvent.getPath())) {
+                return;
+            }
+            long syncMillis = WeatherPayload.decodeSyncTime(messageEvent.getData());
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "The phone synced the forecast "
+                        + (System.currentTimeMillis() - syncMillis) / 1000 + "s ago");
+            }
+            mWeatherSyncMillis = Math.max(mWeatherSyncMillis, syncMillis);
+        }
+
+        /**
+         * Shows the forecast in the data of a "/weather-info" DataItem, and stores it for the
+         * next start if asked to and it's new.
+         *
+         * @param receivedMillis when the phone sent it, or 0 if that isn't known, for a DataItem
+         *                       that was already there
+         * @param source where the data came from, for the logs
+         * @return false if the data can't be read.
+         */
+        private boolean applyWeatherData(byte[] data, long receivedMillis, String source,
+                                         boolean store) {
+            if (Arrays.equals(data, mWeatherData)) {
+                return true;
+            }
+            WeatherPayload payload = WeatherPayload.decode(data);
+            if (payload == null || payload.getDayCount() == 0) {
+                Log.d(TAG, "Ignoring weather data this watch face can't read");
+                return false;
+            }
+            mWeatherData = data;
+            mWeatherReceivedMillis = receivedMillis;
+            mWeatherSource = source;
+            updateWeather(payload);
+            if (store) {
+                mSnapshotStore.write(receivedMillis, data);
+            }
+            return true;
+        }
+
+        /**
+         * Keeps the days of the payload and shows today's.
+         */
+        private void updateWeather(WeatherPayload payload) {
+            mForecast.put(payload);
+            mWeatherTransfers++;
+            mShownJulianDay = Integer.MIN_VALUE;
+            showTodaysWeather();
+        }
+
+        /**
+         * Shows today's forecast from the ring, if it isn't already shown.  If the ring doesn't
+         * have today, the last day shown stays until the phone sends more.
+         */
+        private void showTodaysWeather() {
+            int today = getTodayJulianDay();
+            if (today == mShownJulianDay) {
+                return;
+            }
+            int slot = mForecast.indexOf(today);
+            if (slot < 0) {
+                return;
+            }
+            if (mShownJulianDay != Integer.MIN_VALUE) {
+                // Without the ring, this would have waited for the phone's next send.
+                mLocalRollovers++;
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Moved on to julian day " + today + " from the ring, "
+                            + mForecast.getDaysFrom(today) + " days left; " + mLocalRollovers
+                            + " rollovers saved a transfer, " + mWeatherTransfers
+                            + " forecasts received");
+                }
+            }
+            mShownJulianDay = today;
+
+            String format = getString(R.string.format_temperature);
+            mWeatherHigh = String.format(format, mForecast.getHigh(slot));
+            mWeatherLow = String.format(format, mForecast.getLow(slot));
+            measureWeather();
+
+            mWeatherId = mForecast.getWeatherId(slot);
+            updateWeatherIcon();
+            invalidateRegion(DIRTY_WEATHER);
+
+            requestRedraw();
+        }
+
+        /**
+         * Gets the icon of today's condition at the temperature text size.  The cache decodes and
+         * scales it only the first time, so this is cheap when nothing changed.
+         */
+        private void updateWeatherIcon() {
+            mWeatherIcon = mIconCache.get(mWeatherId, (int) mTextTempHighPaint.getTextSize());
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Icon cache: " + mIconCache.getStats());
+            }
+        }
+
         @Override  // GoogleApiClient.ConnectionCallbacks
         public void onConnected(Bundle connectionHint) {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "onConnected: " + connectionHint);
             }
-            Wearable.DataApi.addListener(mGoogleApiClient, Engine.this);
-            requestWeather();
+            // Called again after the connection comes back, the listener is kept over that.
+            if (!mListening) {
+                Wearable.DataApi.addListener(mConnection.getClient(), Engine.this);
+                Wearable.MessageApi.addListener(mConnection.getClient(), Engine.this);
+                mListening = true;
+            }
+            loadWeatherDataItem();
 
 //            updateConfigDataItemAndUiOnStartup();
         }
@@ -711,55 +1422,107 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
         }
 
 
+        /**
+         * Reads the "/weather-info" DataItem the data layer already has, which is the latest
+         * forecast the phone sent even if it arrived while the watch face wasn't listening.
+         * The phone is only asked for the weather if there is none or it's stale.
+         */
+        private void loadWeatherDataItem() {
+            Uri uri = new Uri.Builder()
+                    .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                    .path(WEATHER_INFO_PATH)
+                    .build();
+            Wearable.DataApi.getDataItems(mConnection.getClient(), uri)
+                    .setResultCallback(new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(DataItemBuffer dataItems) {
+                            boolean found = false;
+                            try {
+                                if (dataItems.getStatus().isSuccess()) {
+                                    for (DataItem dataItem : dataItems) {
+                                        // It may be days old, so it isn't stamped "now".
+                                        if (applyWeatherData(dataItem.getData(), 0, "data item",
+                                                true)) {
+                                            found = true;
+                                            break;
+                                        }
+                                    }
+                                }
+                            } finally {
+                                dataItems.release();
+                            }
+                            if (!found) {
+                                Log.d(TAG, "No weather data item yet");
+                            }
+                            maybeRequestWeather();
+                        }
+                    });
+        }
+
+        /**
+         * Asks the phone for the weather, unless the forecast on screen is recent enough or the
+         * phone was asked a moment ago.
+         */
+        private void maybeRequestWeather() {
+            long now = SystemClock.elapsedRealtime();
+            if (isWeatherFresh()) {
+                mWeatherRequestsSkippedFresh++;
+            } else if (mLastWeatherRequestMillis != 0
+                    && now - mLastWeatherRequestMillis < WEATHER_REQUEST_INTERVAL_MS) {
+                mWeatherRequestsSkippedRecent++;
+            } else {
+                mLastWeatherRequestMillis = now;
+                mWeatherRequests++;
+                requestWeather();
+            }
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Weather requests: " + mWeatherRequests + " sent, "
+                        + mWeatherRequestsSkippedFresh + " skipped fresh, "
+                        + mWeatherRequestsSkippedRecent + " skipped recent");
+            }
+        }
+
+        /**
+         * @return true if the forecast has today and is known to be current as of the last few
+         * hours: it reached the watch then, or the phone said it synced it then.  The phone only
+         * sends the forecast when it changed, so an unchanged one relies on the phone's answer.
+         */
+        private boolean isWeatherFresh() {
+            if (mWeatherData == null) {
+                return false;
+            }
+            long syncMillis = Math.max(mWeatherSyncMillis, mWeatherReceivedMillis);
+            return mForecast.indexOf(getTodayJulianDay()) >= 0
+                    && System.currentTimeMillis() - syncMillis < WEATHER_STALE_MS;
+        }
+
+        /**
+         * @return today's julian day in the watch's time zone, the days the phone sends are
+         * numbered the same way.
+         */
+        private int getTodayJulianDay() {
+            long now = System.currentTimeMillis();
+            return Time.getJulianDay(now,
+                    TimeUnit.MILLISECONDS.toSeconds(mCalendar.getTimeZone().getOffset(now)));
+        }
+
         public void requestWeather() {
             PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(WEATHER_PATH);
             putDataMapRequest.getDataMap().putString("uuid", UUID.randomUUID().toString());
             PutDataRequest request = putDataMapRequest.asPutDataRequest();
 
-            Wearable.DataApi.putDataItem(mGoogleApiClient, request)
-                    .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                        @Override
-                        public void onResult(DataApi.DataItemResult dataItemResult) {
-                            if (!dataItemResult.getStatus().isSuccess()) {
-                                Log.d(TAG, "ndp6<<Failed asking phone for weather data");
-                            } else {
-                                Log.d(TAG, "ndp6<<Successfully asked for weather data");
-                            }
-                        }
-                    });
+            mConnection.putDataItem(request, new WearableConnection.Callback() {
+                @Override
+                public void onDataItemPut(PutDataRequest request) {
+                    Log.d(TAG, "ndp6<<Successfully asked for weather data");
+                }
+            });
         }
 
 
     }
 
     public static int getWeatherImage(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
-        }else if(weatherId==0){
-            return R.drawable.icn_default;
-        }
-        return -1;
+        return WeatherConditions.getIconResource(weatherId);
     }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ijzepeda.wear;
+
+/**
+ * The icon for each OpenWeatherMap condition id, in a table with an entry for every id from 0
+ * to {@link #MAX_WEATHER_ID}, built once.  The ranges are the ones of the phone app's
+ * WeatherConditions; keep the two the same.  Id 0, what the watch shows before any weather
+ * came, gets the default icon.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+final class WeatherConditions {
+
+    static final int MAX_WEATHER_ID = 999;
+
+    private static final int[] sIcons = buildTable();
+
+    private WeatherConditions() {
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return resource id for the corresponding icon. -1 if no relation is found.
+     */
+    static int getIconResource(int weatherId) {
+        if (weatherId < 0 || weatherId > MAX_WEATHER_ID) {
+            return -1;
+        }
+        return sIcons[weatherId];
+    }
+
+    private static int[] buildTable() {
+        int[] icons = new int[MAX_WEATHER_ID + 1];
+        // Where ranges overlap the first one wins, as it did in the chain, so 761 is fog.
+        fill(icons, 200, 232, R.drawable.ic_storm);
+        fill(icons, 300, 321, R.drawable.ic_light_rain);
+        fill(icons, 500, 504, R.drawable.ic_rain);
+        fill(icons, 511, 511, R.drawable.ic_snow);
+        fill(icons, 520, 531, R.drawable.ic_rain);
+        fill(icons, 600, 622, R.drawable.ic_snow);
+        fill(icons, 701, 761, R.drawable.ic_fog);
+        fill(icons, 761, 761, R.drawable.ic_storm);
+        fill(icons, 781, 781, R.drawable.ic_storm);
+        fill(icons, 800, 800, R.drawable.ic_clear);
+        fill(icons, 801, 801, R.drawable.ic_light_clouds);
+        fill(icons, 802, 804, R.drawable.ic_cloudy);
+        fill(icons, 0, 0, R.drawable.icn_default);
+        for (int id = 0; id <= MAX_WEATHER_ID; id++) {
+            if (icons[id] == 0) {
+                icons[id] = -1;
+            }
+        }
+        return icons;
+    }
+
+    private static void fill(int[] icons, int first, int last, int icon) {
+        for (int id = first; id <= last; id++) {
+            if (icons[id] == 0) {
+                icons[id] = icon;
+            }
+        }
+    }
+}
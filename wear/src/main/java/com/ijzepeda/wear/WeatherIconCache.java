@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ijzepeda.wear;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+import android.util.SparseArray;
+
+/**
+ * Weather icons scaled to the size the watch face draws them at.  Each icon resource is decoded
+ * once, and each (icon, height) is scaled once and kept in an LRU bounded in bytes.
+ *
+ * Bitmaps evicted from the LRU are recycled, so callers must not hold on to one across calls
+ * without checking {@link Bitmap#isRecycled()} first.
+ *
+ * Only the full color icon is kept: ambient mode draws no icon.
+ */
+class WeatherIconCache {
+
+    // A few sizes of the handful of icons, about 6KB each on a 320px watch.
+    private static final int MAX_SCALED_BYTES = 256 * 1024;
+
+    private final Resources mResources;
+
+    // Decoded icon resources, by resource id.  There are only nine of them.
+    private final SparseArray<Bitmap> mSources = new SparseArray<Bitmap>();
+
+    private final LruCache<Long, Bitmap> mScaled = new LruCache<Long, Bitmap>(MAX_SCALED_BYTES) {
+        @Override
+        protected int sizeOf(Long key, Bitmap value) {
+            return value.getByteCount();
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, Long key, Bitmap oldValue, Bitmap newValue) {
+            if (oldValue != newValue) {
+                oldValue.recycle();
+            }
+        }
+    };
+
+    private int mDecodeCount;
+    private int mScaleCount;
+
+    WeatherIconCache(Resources resources) {
+        mResources = resources;
+    }
+
+    /**
+     * @param weatherId the OWM condition, 0 or an unknown one gets the default icon
+     * @param height the height to draw the icon at, in pixels; the width keeps its proportions
+     */
+    Bitmap get(int weatherId, int height) {
+        int resId = MyWatchFaceService.getWeatherImage(weatherId);
+        if (resId <= 0) {
+            resId = R.drawable.icn_default;
+        }
+        height = Math.max(height, 1);
+
+        Long key = ((long) resId << 32) | height;
+        Bitmap scaled = mScaled.get(key);
+        if (scaled == null) {
+            scaled = scale(getSource(resId), height);
+            mScaleCount++;
+            mScaled.put(key, scaled);
+        }
+        return scaled;
+    }
+
+    private Bitmap getSource(int resId) {
+        Bitmap source = mSources.get(resId);
+        if (source == null) {
+            source = BitmapFactory.decodeResource(mResources, resId);
+            mDecodeCount++;
+            mSources.put(resId, source);
+        }
+        return source;
+    }
+
+    private static Bitmap scale(Bitmap source, int height) {
+        int width = Math.max(1, Math.round((float) height / source.getHeight() * source.getWidth()));
+        Bitmap scaled = Bitmap.createScaledBitmap(source, width, height, true);
+        if (scaled == source) {
+            // Already the right size.  Evicting it mustn't recycle the decoded source.
+            scaled = source.copy(source.getConfig(), false);
+        }
+        return scaled;
+    }
+
+    /**
+     * @return the bytes held by decoded and scaled icons.
+     */
+    int getByteCount() {
+        int bytes = mScaled.size();
+        for (int i = 0; i < mSources.size(); i++) {
+            bytes += mSources.valueAt(i).getByteCount();
+        }
+        return bytes;
+    }
+
+    String getStats() {
+        return mSources.size() + " decoded, " + mScaled.snapshot().size() + " scaled, "
+                + getByteCount() / 1024 + "KB, " + mDecodeCount + " decodes, " + mScaleCount
+                + " scales, " + mScaled.hitCount() + " hits";
+    }
+
+    /**
+     * Recycles every bitmap, for when the watch face goes away.
+     */
+    void clear() {
+        mScaled.evictAll();
+        for (int i = 0; i < mSources.size(); i++) {
+            mSources.valueAt(i).recycle();
+        }
+        mSources.clear();
+    }
+}
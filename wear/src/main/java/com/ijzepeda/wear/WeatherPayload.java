@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ijzepeda.wear;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The forecast the phone sends in the data of the "/weather-info" DataItem.  This decodes the
+ * format written by the phone's WearWeatherPayload, see there for the layout; the two have to
+ * change together.  It also reads the phone's "/weather-synced" message.
+ */
+final class WeatherPayload {
+
+    static final int VERSION = 1;
+
+    static final int FLAG_METRIC = 1;
+
+    // Bytes of the "/weather-synced" message.
+    static final int SYNC_TIME_SIZE = 8;
+
+    final boolean mMetric;
+    final int mFirstJulianDay;
+    final int[] mWeatherIds;
+    // Tenths of a degree Celsius.
+    final int[] mHighs;
+    final int[] mLows;
+
+    private WeatherPayload(boolean metric, int firstJulianDay, int dayCount) {
+        mMetric = metric;
+        mFirstJulianDay = firstJulianDay;
+        mWeatherIds = new int[dayCount];
+        mHighs = new int[dayCount];
+        mLows = new int[dayCount];
+    }
+
+    /**
+     * @return the forecast, or null if the data is from an unknown version or is cut short.
+     */
+    static WeatherPayload decode(byte[] data) {
+        if (data == null || data.length == 0 || data[0] != VERSION) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        try {
+            in.readByte();
+            boolean metric = (in.readByte() & FLAG_METRIC) != 0;
+            int firstJulianDay = in.readInt();
+            int dayCount = in.readUnsignedByte();
+            WeatherPayload payload = new WeatherPayload(metric, firstJulianDay, dayCount);
+            for (int day = 0; day < dayCount; day++) {
+                payload.mWeatherIds[day] = in.readShort();
+                payload.mHighs[day] = in.readShort();
+                payload.mLows[day] = in.readShort();
+            }
+            return payload;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the time of the phone's last sync in a "/weather-synced" message, or 0 if the
+     * data isn't one.
+     */
+    static long decodeSyncTime(byte[] data) {
+        if (data == null || data.length != SYNC_TIME_SIZE) {
+            return 0;
+        }
+        return ByteBuffer.wrap(data).getLong();
+    }
+
+    int getDayCount() {
+        return mWeatherIds.length;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ijzepeda.wear;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Keeps the last forecast received from the phone in a small file, so the watch face can show
+ * the weather on its first frame after a restart instead of waiting for the phone.
+ *
+ * The file holds the time the forecast was received followed by the payload bytes as the
+ * phone sent them, so it can be decoded like a fresh "/weather-info" DataItem.
+ */
+class WeatherSnapshotStore {
+
+    private static final String TAG = ">WeatherSnapshotStore";
+
+    private static final String FILE_NAME = "weather_snapshot.bin";
+
+    /**
+     * A stored forecast and when it was received.
+     */
+    static class Snapshot {
+        final long mReceivedMillis;
+        final byte[] mPayload;
+
+        Snapshot(long receivedMillis, byte[] payload) {
+            mReceivedMillis = receivedMillis;
+            mPayload = payload;
+        }
+    }
+
+    private final AtomicFile mFile;
+
+    WeatherSnapshotStore(Context context) {
+        mFile = new AtomicFile(context.getFileStreamPath(FILE_NAME));
+    }
+
+    /**
+     * Reads the stored forecast.  The file is a few dozen bytes, small enough to read on the
+     * main thread when the watch face starts.
+     *
+     * @return the snapshot, or null if there is none or it can't be read.
+     */
+    Snapshot read() {
+        FileInputStream in;
+        try {
+            in = mFile.openRead();
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        DataInputStream data = new DataInputStream(in);
+        try {
+            long receivedMillis = data.readLong();
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            byte[] buffer = new byte[256];
+            int count;
+            while ((count = data.read(buffer)) != -1) {
+                payload.write(buffer, 0, count);
+            }
+            return new Snapshot(receivedMillis, payload.toByteArray());
+        } catch (IOException e) {
+            Log.w(TAG, "Can't read the weather snapshot", e);
+            return null;
+        } finally {
+            try {
+                data.close();
+            } catch (IOException e) {
+                // Nothing was written, nothing to lose.
+            }
+        }
+    }
+
+    /**
+     * Replaces the stored forecast, in the background.
+     */
+    void write(final long receivedMillis, final byte[] payload) {
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                FileOutputStream out = null;
+                try {
+                    out = mFile.startWrite();
+                    DataOutputStream data = new DataOutputStream(out);
+                    data.writeLong(receivedMillis);
+                    data.write(payload);
+                    data.flush();
+                    mFile.finishWrite(out);
+                } catch (IOException e) {
+                    Log.w(TAG, "Can't write the weather snapshot", e);
+                    if (out != null) {
+                        mFile.failWrite(out);
+                    }
+                }
+            }
+        });
+    }
+}